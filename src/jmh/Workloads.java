@@ -0,0 +1,97 @@
+import benchmark.Workload;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Implementation of the benchmarked operations, in the default package with the clustering
+ * classes. Created by {@link Workload#create()}.
+ */
+public class Workloads implements Workload {
+
+    private Dataset dataset;
+    /**
+     * data vectors as arrays, for {@link Dataset#nearestIndex(double[], double[][])}
+     */
+    private double[][] rows;
+    /**
+     * the initial clustering state that every clustering run starts from
+     */
+    private Dataset initial;
+    private long seed;
+
+    @Override
+    public void load(String filename, int clusters, long seed) throws IOException {
+        dataset = new Dataset(filename, clusters);
+        dataset.setSeed(seed);
+        dataset.initializeRandomCentroids();
+        rows = new double[dataset.storage.size()][];
+        for (int i = 0; i < rows.length; i++)
+            rows[i] = dataset.storage.getRow(i);
+        initial = dataset.copy(new SplittableRandom(seed));
+        this.seed = seed;
+    }
+
+    @Override
+    public int vectors() {
+        return dataset.getNumberOfVectors();
+    }
+
+    @Override
+    public double distSq(int centroid) {
+        double[] point = dataset.centroids[centroid];
+        double sum = 0;
+        for (int i = 0; i < dataset.storage.size(); i++)
+            sum += dataset.storage.distSq(i, point);
+        return sum;
+    }
+
+    @Override
+    public long nearestIndex() {
+        long sum = 0;
+        for (double[] row : rows)
+            sum += Dataset.nearestIndex(row, dataset.centroids);
+        return sum;
+    }
+
+    @Override
+    public double partition(ExecutorService pool) {
+        return dataset.partition(pool);
+    }
+
+    @Override
+    public void updateCentroids() {
+        dataset.updateClusterStatistics();
+        dataset.updateCentroids();
+    }
+
+    @Override
+    public double TSE() {
+        return dataset.TSE();
+    }
+
+    @Override
+    public double cluster(String algorithm, int threads) throws IllegalArgumentException {
+        ClusteringAlgorithm clusteringAlgorithm;
+        switch (algorithm) {
+            case "km":
+                clusteringAlgorithm = new KMeans();
+                break;
+            case "fkm":
+                clusteringAlgorithm = new FastKMeans();
+                break;
+            case "rs":
+                clusteringAlgorithm = new RandomSwap();
+                break;
+            case "sr":
+                clusteringAlgorithm = new StochasticRelaxation(StochasticRelaxation.DEFAULT_TEMPERATURE_ALPHA, threads);
+                break;
+            default:
+                throw new IllegalArgumentException("cluster(): Unknown algorithm: " + algorithm);
+        }
+        Dataset run = initial.copy(new SplittableRandom(seed));
+        clusteringAlgorithm.cluster(run);
+        return run.TSE();
+    }
+}
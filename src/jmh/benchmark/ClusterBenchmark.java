@@ -0,0 +1,43 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete runs of the algorithms with their default parameters, from the same seeded initial
+ * centroids on every run. The threads are used by stochastic relaxation only. A run takes from
+ * milliseconds to minutes (random swap on birch2), so each is measured once; select the runs
+ * with -p, for example -p algorithm=km,fkm.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClusterBenchmark {
+
+    /**
+     * km, fkm, rs or sr
+     */
+    @Param({"km", "fkm", "rs", "sr"})
+    public String algorithm;
+
+    @Param({"1"})
+    public int threads;
+
+    @Benchmark
+    public double cluster(DatasetState state) {
+        return state.workload.cluster(algorithm, threads);
+    }
+}
@@ -0,0 +1,78 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * A bundled dataset loaded with seeded random centroids, shared by the benchmarks of a trial
+ */
+@State(Scope.Benchmark)
+public class DatasetState {
+
+    /**
+     * seed of the random centroids and of the algorithms
+     */
+    public static final long SEED = 1;
+
+    /**
+     * name of the dataset in the datasets directory
+     */
+    @Param({"s1", "a3", "bridge", "dim032", "birch2"})
+    public String dataset;
+
+    /**
+     * number of clusters; 0 for the number of clusters in the dataset
+     */
+    @Param({"0"})
+    public int k;
+
+    public Workload workload;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        workload = Workload.create();
+        workload.load(filename(dataset), k > 0 ? k : clusters(dataset), SEED);
+    }
+
+    /**
+     * @return path of a bundled dataset, relative to the project directory
+     */
+    static String filename(String dataset) {
+        return "datasets/" + dataset + ".txt";
+    }
+
+    /**
+     * @return number of clusters in a bundled dataset
+     * @throws IllegalArgumentException if the number is not known
+     */
+    static int clusters(String dataset) throws IllegalArgumentException {
+        switch (dataset) {
+            case "s1":
+            case "s2":
+            case "s3":
+            case "s4":
+                return 15;
+            case "a1":
+                return 20;
+            case "a2":
+                return 35;
+            case "a3":
+                return 50;
+            case "bridge":
+                return 256;
+            case "dim032":
+                return 16;
+            case "birch2":
+                return 100;
+            case "unbalance":
+                return 8;
+            default:
+                throw new IllegalArgumentException("clusters(): Unknown dataset: " + dataset);
+        }
+    }
+}
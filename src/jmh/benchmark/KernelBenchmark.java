@@ -0,0 +1,44 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded kernels, each over the whole dataset: the distances to one centroid, the
+ * nearest centroid of every vector, the centroid update with the accumulation of the cluster
+ * sums, and the error of the partitioning
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+
+    @Benchmark
+    public double distSq(DatasetState state) {
+        return state.workload.distSq(0);
+    }
+
+    @Benchmark
+    public long nearestIndex(DatasetState state) {
+        return state.workload.nearestIndex();
+    }
+
+    @Benchmark
+    public void updateCentroids(DatasetState state) {
+        state.workload.updateCentroids();
+    }
+
+    @Benchmark
+    public double TSE(DatasetState state) {
+        return state.workload.TSE();
+    }
+}
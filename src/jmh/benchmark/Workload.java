@@ -0,0 +1,93 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Clustering operations measured by the benchmarks. The clustering classes are in the default
+ * package, which code in a named package cannot refer to, and JMH requires the benchmarks to be
+ * in a named package; the operations are therefore implemented by the default package class
+ * Workloads and called through this interface. Each benchmark uses a single implementation, so
+ * the calls are inlined like direct calls.
+ */
+public interface Workload {
+
+    /**
+     * Creates the implementation
+     *
+     * @return new workload without data
+     * @throws IllegalStateException if the implementation is not on the class path
+     */
+    static Workload create() throws IllegalStateException {
+        try {
+            return (Workload) Class.forName("Workloads").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("create(): " + e, e);
+        }
+    }
+
+    /**
+     * Loads a dataset, picks random centroids and partitions the data
+     *
+     * @param filename dataset file name
+     * @param clusters number of clusters
+     * @param seed     seed of the random number generator
+     * @throws IOException if the file cannot be read
+     */
+    void load(String filename, int clusters, long seed) throws IOException;
+
+    /**
+     * @return number of data vectors of the loaded dataset
+     */
+    int vectors();
+
+    /**
+     * Calculates the squared distances of all data vectors to one centroid
+     *
+     * @param centroid centroid index
+     * @return sum of the distances
+     */
+    double distSq(int centroid);
+
+    /**
+     * Finds the nearest centroid of every data vector with Dataset.nearestIndex
+     *
+     * @return sum of the centroid indices
+     */
+    long nearestIndex();
+
+    /**
+     * Partitions the data with the current centroids, in the blocks of rows used by the
+     * parallel algorithms
+     *
+     * @param pool threads to partition the blocks on; null to partition them in the calling
+     *             thread
+     * @return total squared error
+     */
+    double partition(ExecutorService pool);
+
+    /**
+     * Accumulates the cluster sums and distances of all data vectors from their current labels,
+     * then moves the centroids to the means of their clusters. The partitioning normally
+     * accumulates the sums along the way, which leaves only the O(K*D) division to the centroid
+     * update; this measures the per-vector accumulation on its own. The centroids converge after
+     * a few calls, but the cost of a call does not depend on where they are.
+     */
+    void updateCentroids();
+
+    /**
+     * @return total squared error of the current partitioning
+     */
+    double TSE();
+
+    /**
+     * Runs an algorithm from the loaded centroids on a copy of the dataset, with a random number
+     * stream seeded the same way on every call
+     *
+     * @param algorithm km, fkm, rs or sr
+     * @param threads   number of worker threads of stochastic relaxation
+     * @return total squared error of the result
+     * @throws IllegalArgumentException if the algorithm is unknown
+     */
+    double cluster(String algorithm, int threads) throws IllegalArgumentException;
+}
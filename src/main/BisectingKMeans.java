@@ -0,0 +1,256 @@
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/**
+ * Bisecting k-means: starts with all data vectors in one cluster and repeatedly splits the
+ * cluster with the largest squared error in two with 2-means, until there are K clusters.
+ * Each vector takes part in about log2(K) splits of two centroids each, so the clustering costs
+ * O(N*D*log K) per 2-means iteration instead of the O(N*K*D) of a k-means iteration. The
+ * result can optionally be polished with fast k-means on the full data.
+ *
+ * The splits form a binary cluster tree, which is kept for assigning new vectors in O(D*log K)
+ * time, see {@link #assign(double[])}.
+ *
+ * Based on M. Steinbach, G. Karypis, V. Kumar, "A Comparison of Document Clustering
+ * Techniques", KDD Workshop on Text Mining, 2000.
+ */
+public class BisectingKMeans implements ClusteringAlgorithm {
+
+    /**
+     * polish the result with fast k-means
+     */
+    private final boolean polish;
+    /**
+     * algorithm used for the splits
+     */
+    private final KMeans kMeans = new KMeans();
+
+    /**
+     * root of the cluster tree of the last run
+     */
+    private Node root;
+    /**
+     * number of iterations done by the last run
+     */
+    private int iterations;
+    /**
+     * called after each iteration of the splits and the polish; null if none
+     */
+    private IterationListener listener;
+
+    /**
+     * Bisecting k-means followed by fast k-means on the full data
+     */
+    public BisectingKMeans() {
+        this(true);
+    }
+
+    /**
+     * @param polish run fast k-means on the full data after the splits
+     */
+    public BisectingKMeans(boolean polish) {
+        this.polish = polish;
+    }
+
+    /**
+     * Splits clusters with 2-means iterated until convergence
+     */
+    @Override
+    public void cluster(Dataset dataset) {
+        run(dataset, 0, StopCondition.NEVER);
+    }
+
+    /**
+     * Splits clusters with 2-means with maximum number of iterations, which also limits the
+     * iterations of the polish
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations) {
+        run(dataset, maxIterations, StopCondition.NEVER);
+    }
+
+    /**
+     * Splits clusters with 2-means iterated until convergence, until stopped. When stopped,
+     * the leaves split so far become the clusters and the rest of the centroids are kept.
+     */
+    @Override
+    public void cluster(Dataset dataset, StopCondition stop) {
+        run(dataset, 0, stop);
+    }
+
+    /**
+     * Splits clusters with 2-means with maximum number of iterations, until stopped
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations, StopCondition stop) {
+        run(dataset, maxIterations, stop);
+    }
+
+    /**
+     * @param maxIterations maximum number of iterations of each 2-means and of the polish; 0 for
+     *                      no limit
+     * @param stop          checked between the splits and the iterations
+     */
+    private void run(Dataset dataset, int maxIterations, StopCondition stop) {
+        iterations = 0;
+        int n = dataset.storage.size();
+        int[] all = new int[n];
+        for (int i = 0; i < n; i++)
+            all[i] = i;
+        root = new Node(all, dataset.mean(), Double.POSITIVE_INFINITY);
+
+        // the leaves that can still be split, largest error first
+        PriorityQueue<Node> queue = new PriorityQueue<>((a, b) -> Double.compare(b.error, a.error));
+        ArrayList<Node> finished = new ArrayList<>();
+        queue.add(root);
+        while (queue.size() + finished.size() < dataset.getNumberOfClusters() && !queue.isEmpty() && !stop.isMet()) {
+            Node node = queue.poll();
+            if (split(node, dataset, maxIterations, stop)) {
+                queue.add(node.left);
+                queue.add(node.right);
+            } else {
+                finished.add(node);
+            }
+        }
+        finished.addAll(queue);
+
+        // the leaves become the clusters; with fewer distinct vectors than clusters the rest of
+        // the initial centroids are kept as empty clusters
+        dataset.centroids = ClusteringState.copyOf(dataset.centroids);
+        for (int c = 0; c < finished.size(); c++) {
+            Node leaf = finished.get(c);
+            leaf.cluster = c;
+            dataset.centroids[c] = leaf.centroid.clone();
+        }
+        if (finished.size() < dataset.getNumberOfClusters() && stop.isMet()) {
+            // stopped before the tree was complete: the kept centroids take part as well
+            dataset.partition();
+        } else {
+            dataset.beginPartitioning();
+            for (Node leaf : finished) {
+                for (int i : leaf.rows)
+                    dataset.assign(i, leaf.cluster, dataset.storage.distSq(i, leaf.centroid));
+                leaf.rows = null;
+            }
+        }
+        dataset.updateCentroids();
+
+        if (polish) {
+            FastKMeans fastKMeans = new FastKMeans();
+            fastKMeans.setListener(listener);
+            if (maxIterations > 0)
+                fastKMeans.cluster(dataset, maxIterations, stop);
+            else
+                fastKMeans.cluster(dataset, stop);
+            iterations += fastKMeans.getIterations();
+        }
+    }
+
+    /**
+     * Splits a leaf with 2-means started from two random vectors of the leaf. The vectors are
+     * viewed through their rows, not copied.
+     *
+     * @return false if the leaf cannot be split, for example when its vectors are identical
+     */
+    private boolean split(Node node, Dataset dataset, int maxIterations, StopCondition stop) {
+        int n = node.rows.length;
+        if (n < 2 || !(node.error > 0))
+            return false;
+        double[] weights = null;
+        if (dataset.weights != null) {
+            weights = new double[n];
+            for (int i = 0; i < n; i++)
+                weights[i] = dataset.weights[node.rows[i]];
+        }
+        Dataset subset = dataset.subset(new PermutedStorage(dataset.storage, node.rows), weights, 2, null);
+        if (maxIterations > 0)
+            kMeans.cluster(subset, maxIterations, stop);
+        else
+            kMeans.cluster(subset, stop);
+        iterations += kMeans.getIterations();
+
+        int[] sizes = subset.clusterSizes();
+        if (sizes[0] == 0 || sizes[1] == 0)
+            return false;
+        int[][] rows = {new int[sizes[0]], new int[sizes[1]]};
+        int[] next = new int[2];
+        for (int i = 0; i < n; i++) {
+            int c = subset.labels.get(i);
+            rows[c][next[c]++] = node.rows[i];
+        }
+        node.left = new Node(rows[0], subset.centroids[0], subset.clusterSSE(0));
+        node.right = new Node(rows[1], subset.centroids[1], subset.clusterSSE(1));
+        node.rows = null;
+        return true;
+    }
+
+    /**
+     * Finds the cluster of a vector by descending the cluster tree of the last run, choosing
+     * the child with the nearer split centroid at each level. Takes O(D*log K) time for a
+     * balanced tree, but is not guaranteed to find the nearest centroid, especially after the
+     * polish has moved the centroids.
+     *
+     * @param vector vector to assign
+     * @return cluster index
+     * @throws IllegalStateException if the algorithm has not been run
+     */
+    public int assign(double[] vector) throws IllegalStateException {
+        if (root == null)
+            throw new IllegalStateException("assign(): The algorithm has not been run");
+        Node node = root;
+        while (node.left != null) {
+            node = Dataset.distSq(vector, node.left.centroid) <= Dataset.distSq(vector, node.right.centroid)
+                    ? node.left : node.right;
+        }
+        return node.cluster;
+    }
+
+    /**
+     * @return number of 2-means iterations in all splits, plus the polish iterations
+     */
+    @Override
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * The listener is passed on to the 2-means of the splits and to the polish, so it receives
+     * the iterations of each split, with the error of the split cluster, followed by those of
+     * the polish
+     */
+    @Override
+    public void setListener(IterationListener listener) {
+        this.listener = listener;
+        kMeans.setListener(listener);
+    }
+
+    /**
+     * Node of the cluster tree
+     */
+    private static final class Node {
+        /**
+         * rows of the vectors in the cluster; released once the node is split or assigned
+         */
+        int[] rows;
+        /**
+         * mean of the vectors in the cluster when it was formed
+         */
+        final double[] centroid;
+        /**
+         * squared error of the cluster
+         */
+        final double error;
+        Node left;
+        Node right;
+        /**
+         * cluster index of a leaf
+         */
+        int cluster = -1;
+
+        Node(int[] rows, double[] centroid, double error) {
+            this.rows = rows;
+            this.centroid = centroid;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Per-cluster sufficient statistics of a partitioning: number of vectors, total weight,
+ * weighted sum of the vectors and weighted sum of their squared norms in each cluster.
+ *
+ * The statistics are accumulated while the data is partitioned. They allow calculating the
+ * cluster means and the squared error of any centroid in O(D) without going through the data:
+ * SSE = sum(w * |x|^2) - 2 * c . sum(w * x) + sum(w) * |c|^2
+ */
+class ClusterStatistics {
+
+    /**
+     * number of data vectors in each cluster
+     */
+    final int[] sizes;
+    /**
+     * total weight of the data vectors in each cluster; equal to the sizes for unit weights
+     */
+    final double[] weights;
+    /**
+     * weighted sum of the data vectors in each cluster
+     */
+    final double[][] sums;
+    /**
+     * weighted sum of the squared norms of the data vectors in each cluster
+     */
+    final double[] squaredNorms;
+
+    /**
+     * Creates empty statistics
+     *
+     * @param numberOfClusters number of clusters
+     * @param dimensions       dimensionality of the data vectors
+     */
+    ClusterStatistics(int numberOfClusters, int dimensions) {
+        sizes = new int[numberOfClusters];
+        weights = new double[numberOfClusters];
+        sums = new double[numberOfClusters][dimensions];
+        squaredNorms = new double[numberOfClusters];
+    }
+
+    /**
+     * Copy constructor
+     */
+    ClusterStatistics(ClusterStatistics source) {
+        sizes = source.sizes.clone();
+        weights = source.weights.clone();
+        sums = ClusteringState.copyOf(source.sums);
+        squaredNorms = source.squaredNorms.clone();
+    }
+
+    /**
+     * @return number of clusters
+     */
+    int numberOfClusters() {
+        return sizes.length;
+    }
+
+    /**
+     * Resets all clusters to empty
+     */
+    void clear() {
+        for (int c = 0; c < sizes.length; c++) {
+            sizes[c] = 0;
+            weights[c] = 0;
+            squaredNorms[c] = 0;
+            double[] sum = sums[c];
+            for (int d = 0; d < sum.length; d++)
+                sum[d] = 0;
+        }
+    }
+
+    /**
+     * Adds a data vector to a cluster
+     *
+     * @param data    data matrix
+     * @param row     index of the data vector
+     * @param cluster cluster index
+     * @param weight  weight of the data vector
+     */
+    void add(DataStorage data, int row, int cluster, double weight) {
+        squaredNorms[cluster] += data.addTo(row, sums[cluster], weight);
+        weights[cluster] += weight;
+        sizes[cluster]++;
+    }
+
+    /**
+     * Removes a data vector from a cluster
+     *
+     * @param data    data matrix
+     * @param row     index of the data vector, must have been added to the cluster earlier
+     * @param cluster cluster index
+     * @param weight  weight the data vector was added with
+     */
+    void remove(DataStorage data, int row, int cluster, double weight) {
+        squaredNorms[cluster] -= data.subtractFrom(row, sums[cluster], weight);
+        weights[cluster] -= weight;
+        sizes[cluster]--;
+    }
+
+    /**
+     * Adds the statistics of another partial pass, for example one block of the data
+     *
+     * @param other statistics with the same number of clusters and dimensions
+     */
+    void addAll(ClusterStatistics other) {
+        for (int c = 0; c < sizes.length; c++) {
+            sizes[c] += other.sizes[c];
+            weights[c] += other.weights[c];
+            squaredNorms[c] += other.squaredNorms[c];
+            double[] sum = sums[c];
+            double[] otherSum = other.sums[c];
+            for (int d = 0; d < sum.length; d++)
+                sum[d] += otherSum[d];
+        }
+    }
+
+    /**
+     * @param cluster cluster index
+     * @return weighted mean vector of the cluster; NaN components if the cluster is empty
+     */
+    double[] mean(int cluster) {
+        double[] sum = sums[cluster];
+        double[] mean = new double[sum.length];
+        for (int d = 0; d < sum.length; d++)
+            mean[d] = sum[d] / weights[cluster];
+        return mean;
+    }
+
+    /**
+     * Calculates the squared error of the cluster's vectors to the given centroid
+     *
+     * @param cluster  cluster index
+     * @param centroid centroid of the cluster (does not have to be the mean)
+     * @return weighted sum of squared distances between the cluster's vectors and the centroid
+     */
+    double squaredError(int cluster, double[] centroid) {
+        if (sizes[cluster] == 0)
+            return 0;
+        double[] sum = sums[cluster];
+        double dot = 0;
+        double centroidNorm = 0;
+        for (int d = 0; d < sum.length; d++) {
+            dot += centroid[d] * sum[d];
+            centroidNorm += centroid[d] * centroid[d];
+        }
+        // the terms can cancel out; rounding must not produce a negative error
+        return Math.max(0, squaredNorms[cluster] - 2 * dot + weights[cluster] * centroidNorm);
+    }
+}
@@ -2,6 +2,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.SplittableRandom;
 
 /**
  * main()-function and repeated clustering utilities 
@@ -54,6 +55,24 @@ public class Clustering {
 		outputFilename = new File(outputFilename).getName();
 		String algorithmName = "fkm";
 		int repeats = 1;
+		int regroupInterval = 0;
+		SpaceFillingCurve curve = null;
+		StoragePrecision precision = StoragePrecision.DOUBLE;
+		boolean compactPartitions = false;
+		boolean offHeap = false;
+		boolean deduplicate = false;
+		int coresetSize = 0;
+		int initialSampleSize = 0;
+		int loadedSampleSize = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean costGuidedSwaps = false;
+		int swapPatience = 0;
+		boolean polish = true;
+		long timeLimit = 0;
+		boolean verbose = false;
+		String reportFilename = null;
+		long seed = new SplittableRandom().nextLong();
+		String binaryFilename = null;
 		for (int i = 2; i < args.length; i += 2) {
 			if (args[i].toLowerCase().equals("-c")) {
 				// real centroids
@@ -85,6 +104,169 @@ public class Clustering {
 			} else if (args[i].toLowerCase().equals("-a")) {
 				// algorithm name
 				algorithmName = args[i + 1].toLowerCase();
+			} else if (args[i].toLowerCase().equals("-g")) {
+				// group data vectors by cluster periodically
+				regroupInterval = -1;
+				try {
+					regroupInterval = Integer.parseInt(args[i + 1]);
+				} catch (NumberFormatException e) {
+				}
+				if(regroupInterval < 0){
+					System.err.println("Invalid regroup interval: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-z")) {
+				// space-filling curve order of data vectors
+				try {
+					curve = SpaceFillingCurve.valueOf(args[i + 1].toUpperCase());
+				} catch (IllegalArgumentException e) {
+					System.err.println("Invalid space-filling curve: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-p")) {
+				// storage format of data vectors
+				try {
+					precision = StoragePrecision.valueOf(args[i + 1].toUpperCase());
+				} catch (IllegalArgumentException e) {
+					System.err.println("Invalid storage precision: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-l")) {
+				// storage format of the partitioning
+				if (args[i + 1].toLowerCase().equals("compact")) {
+					compactPartitions = true;
+				} else if (!args[i + 1].toLowerCase().equals("full")) {
+					System.err.println("Invalid label format: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-x")) {
+				// location of the data matrix
+				if (args[i + 1].toLowerCase().equals("direct")) {
+					offHeap = true;
+				} else if (!args[i + 1].toLowerCase().equals("heap")) {
+					System.err.println("Invalid data location: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-d")) {
+				// collapse duplicate vectors
+				if (args[i + 1].toLowerCase().equals("on")) {
+					deduplicate = true;
+				} else if (!args[i + 1].toLowerCase().equals("off")) {
+					System.err.println("Invalid duplicate collapsing option: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-w")) {
+				// cluster a coreset of the data
+				coresetSize = -1;
+				try {
+					coresetSize = Integer.parseInt(args[i + 1]);
+				} catch (NumberFormatException e) {
+				}
+				if(coresetSize <= 0){
+					System.err.println("Invalid coreset size: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-m")) {
+				// cluster growing samples before the full data
+				initialSampleSize = -1;
+				try {
+					initialSampleSize = Integer.parseInt(args[i + 1]);
+				} catch (NumberFormatException e) {
+				}
+				if(initialSampleSize <= 0){
+					System.err.println("Invalid initial sample size: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-n")) {
+				// load a random sample of the input
+				loadedSampleSize = -1;
+				try {
+					loadedSampleSize = Integer.parseInt(args[i + 1]);
+				} catch (NumberFormatException e) {
+				}
+				if(loadedSampleSize <= 0){
+					System.err.println("Invalid sample size: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-t")) {
+				// worker threads of the parallel algorithms
+				threads = -1;
+				try {
+					threads = Integer.parseInt(args[i + 1]);
+				} catch (NumberFormatException e) {
+				}
+				if(threads <= 0){
+					System.err.println("Invalid number of threads: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-e")) {
+				// swap selection of random swap
+				if (args[i + 1].toLowerCase().equals("cost")) {
+					costGuidedSwaps = true;
+				} else if (args[i + 1].toLowerCase().equals("random")) {
+					costGuidedSwaps = false;
+				} else {
+					System.err.println("Invalid swap selection: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-i")) {
+				// adaptive random swap
+				swapPatience = -1;
+				try {
+					swapPatience = Integer.parseInt(args[i + 1]);
+				} catch (NumberFormatException e) {
+				}
+				if(swapPatience < 0){
+					System.err.println("Invalid number of trials: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-k")) {
+				// polish of bisecting k-means
+				if (args[i + 1].toLowerCase().equals("off")) {
+					polish = false;
+				} else if (!args[i + 1].toLowerCase().equals("on")) {
+					System.err.println("Invalid polish option: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-q")) {
+				// time limit of all repeats
+				timeLimit = -1;
+				try {
+					timeLimit = Long.parseLong(args[i + 1]);
+				} catch (NumberFormatException e) {
+				}
+				if(timeLimit <= 0){
+					System.err.println("Invalid time limit: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-v")) {
+				// print every iteration
+				if (args[i + 1].toLowerCase().equals("on")) {
+					verbose = true;
+				} else if (!args[i + 1].toLowerCase().equals("off")) {
+					System.err.println("Invalid verbose option: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-f")) {
+				// machine-readable report of the repeats
+				reportFilename = args[i + 1];
+				try {
+					new FileWriter(new File(reportFilename)).close();
+				} catch(IOException e){
+					System.err.println("Unable to access report file: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-s")) {
+				// seed of the random number generator
+				try {
+					seed = Long.parseLong(args[i + 1]);
+				} catch (NumberFormatException e) {
+					System.err.println("Invalid seed: " + args[i + 1]);
+					return;
+				}
+			} else if (args[i].toLowerCase().equals("-b")) {
+				// binary copy of the input
+				binaryFilename = args[i + 1];
 			} else {
 				System.err.println("Unknown option: " + args[i]);
 				printUsage();
@@ -93,27 +275,138 @@ public class Clustering {
 		}
 
 		Clustering clustering;
+		RandomSwap randomSwap = null;
 		if(algorithmName.equals("km")) {
 			System.out.println("Normal k-means algorithm selected");
-			clustering = new Clustering(inputFilename, numberOfClusters, realCentroidsFilename, new KMeans());
+			clustering = new Clustering(inputFilename, numberOfClusters, loadedSampleSize, seed, realCentroidsFilename, new KMeans());
 		} else if(algorithmName.equals("rs")){
 			System.out.println("Random swap algorithm selected");
-			clustering = new Clustering(inputFilename, numberOfClusters, realCentroidsFilename, new RandomSwap());
+			RandomSwap.Removal removal = costGuidedSwaps ? RandomSwap.Removal.MIN_COST : RandomSwap.Removal.RANDOM;
+			RandomSwap.Insertion insertion = costGuidedSwaps ? RandomSwap.Insertion.ERROR_PROPORTIONAL : RandomSwap.Insertion.RANDOM;
+			randomSwap = swapPatience > 0
+					? RandomSwap.adaptive(removal, insertion, swapPatience)
+					: new RandomSwap(removal, insertion);
+			clustering = new Clustering(inputFilename, numberOfClusters, loadedSampleSize, seed, realCentroidsFilename, randomSwap);
 		} else if (algorithmName.equals("sr")){
 			System.out.println("Stochastic relaxation algorithm selected");
-			clustering = new Clustering(inputFilename, numberOfClusters, realCentroidsFilename, new StochasticRelaxation());
+			clustering = new Clustering(inputFilename, numberOfClusters, loadedSampleSize, seed, realCentroidsFilename,
+					new StochasticRelaxation(StochasticRelaxation.DEFAULT_TEMPERATURE_ALPHA, threads));
+		} else if (algorithmName.equals("bkm")){
+			System.out.println("Bisecting k-means algorithm selected");
+			clustering = new Clustering(inputFilename, numberOfClusters, loadedSampleSize, seed, realCentroidsFilename, new BisectingKMeans(polish));
+		} else if (algorithmName.equals("pnn")){
+			System.out.println("Pairwise nearest neighbor algorithm selected");
+			clustering = new Clustering(inputFilename, numberOfClusters, loadedSampleSize, seed, realCentroidsFilename, new PNN());
+		} else if (algorithmName.equals("ga")){
+			System.out.println("Genetic algorithm selected");
+			clustering = new Clustering(inputFilename, numberOfClusters, loadedSampleSize, seed, realCentroidsFilename,
+					new GeneticAlgorithm(GeneticAlgorithm.DEFAULT_POPULATION_SIZE, GeneticAlgorithm.DEFAULT_FINE_TUNE_ITERATIONS, threads));
 		} else if (algorithmName.equals("fkm")){
 			// default algorithm fast k-means
 			System.out.println("Fast k-means algorithm selected");
-			clustering = new Clustering(inputFilename, numberOfClusters, realCentroidsFilename, new FastKMeans());
+			clustering = new Clustering(inputFilename, numberOfClusters, loadedSampleSize, seed, realCentroidsFilename, new FastKMeans());
 		} else {
 			System.err.println("Invalid algorithm option: " + algorithmName);
 			printUsage();
 			return;
 		}
 		
-		clustering.runMultiple(repeats);
+		try {
+			clustering.dataset.convertStorage(precision);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Unable to store the data in the requested format: " + e.getMessage());
+			return;
+		}
+		System.out.println("Random seed: " + seed);
+		if (loadedSampleSize > 0)
+			System.out.println("Loaded a random sample of " + clustering.dataset.getNumberOfVectors() + " vectors");
+		if (precision == StoragePrecision.AUTO)
+			System.out.println("Data stored as " + clustering.dataset.getStoragePrecision().name().toLowerCase());
+		if (binaryFilename != null) {
+			try {
+				clustering.dataset.writeBinary(binaryFilename);
+			} catch (IOException e) {
+				System.err.println("Unable to write binary data file: " + binaryFilename);
+				return;
+			}
+		}
+		if (deduplicate) {
+			int vectors = clustering.dataset.getNumberOfVectors();
+			try {
+				double ratio = clustering.dataset.deduplicate();
+				System.out.printf("Duplicates collapsed: %d -> %d distinct vectors, compression ratio %.3f%n",
+						vectors, clustering.dataset.getNumberOfVectors(), ratio);
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+				return;
+			}
+		}
+		if (offHeap)
+			clustering.dataset.moveOffHeap();
+		MultiResolutionClustering multiResolution = null;
+		if (initialSampleSize > 0) {
+			System.out.println("Clustering random samples from " + initialSampleSize + " vectors before the full data");
+			multiResolution = new MultiResolutionClustering(clustering.algorithm, initialSampleSize);
+			clustering.algorithm = multiResolution;
+		}
+		if (coresetSize > 0) {
+			System.out.println("Clustering a coreset of " + coresetSize + " sampled vectors");
+			clustering.algorithm = new CoresetClustering(clustering.algorithm, coresetSize);
+		}
+		clustering.dataset.setCompactPartitions(compactPartitions);
+		if (curve != null)
+			clustering.dataset.sortBySpaceFillingCurve(curve);
+		clustering.dataset.setRegroupInterval(regroupInterval);
+		if (reportFilename != null) {
+			clustering.report = new RunReport(clustering.algorithm.getClass().getSimpleName(),
+					clustering.dataset.getNumberOfVectors(), numberOfClusters, clustering.dataset.getDimensions(), seed);
+		}
+		if (verbose && clustering.report != null) {
+			RunReport report = clustering.report;
+			clustering.algorithm.setListener(event -> {
+				System.out.println(event);
+				report.iterationDone(event);
+			});
+		} else if (verbose) {
+			clustering.algorithm.setListener(System.out::println);
+		} else if (clustering.report != null) {
+			clustering.algorithm.setListener(clustering.report);
+		}
+		clustering.runMultiple(repeats, timeLimit > 0 ? StopCondition.within(timeLimit) : StopCondition.NEVER);
+		if (multiResolution != null) {
+			int[] sizes = multiResolution.getLevelSizes();
+			int[] iterations = multiResolution.getLevelIterations();
+			System.out.println("Last repeat:\tvectors\titerations");
+			for (int level = 0; level < sizes.length; level++)
+				System.out.printf("Level %d:\t%d\t%d%n", level + 1, sizes[level], iterations[level]);
+		}
+		if (randomSwap != null && randomSwap.getIterations() > 0) {
+			System.out.printf("Last repeat: %d of %d swaps accepted (%.1f%%)%n", randomSwap.getAcceptedSwaps(),
+					randomSwap.getIterations(), 100.0 * randomSwap.getAcceptedSwaps() / randomSwap.getIterations());
+			System.out.printf("Last repeat: %.2f k-means iterations per swap, %d trials saved by the stopping rule%n",
+					(double) randomSwap.getLocalIterations() / randomSwap.getIterations(), randomSwap.getTrialsSaved());
+		}
+		if (verbose && clustering.timesRepeated > 0) {
+			System.out.printf("Average over %d repeats: MSE %.2f, nMSE %.4f", clustering.timesRepeated,
+					clustering.cumulativeTSE / clustering.timesRepeated / clustering.dataset.getTotalWeight(),
+					clustering.cumulativeNMSE / clustering.timesRepeated);
+			if (clustering.dataset.realCentroids != null)
+				System.out.printf(", CI %.2f, CI=0 reached %d times", clustering.cumulativeCI / clustering.timesRepeated,
+						clustering.timesCI0Reached);
+			System.out.println();
+		}
 		
+		if (reportFilename != null) {
+			try (BufferedWriter bw = new BufferedWriter(new FileWriter(new File(reportFilename)))) {
+				if (reportFilename.toLowerCase().endsWith(".csv"))
+					clustering.report.writeCsv(bw);
+				else
+					clustering.report.writeJson(bw);
+			} catch (IOException e) {
+				System.err.println("Encountered error while writing report file");
+			}
+		}
+
 		try {
 			BufferedWriter bw = new BufferedWriter(new FileWriter(new File(outputFilename)));
 			for(double[] c : clustering.dataset.centroids){
@@ -143,6 +436,45 @@ public class Clustering {
 		System.out.println("\t\t\t rs\t- random swap");
 		System.out.println("\t\t\t sr\t- stochastic relaxation");
 		System.out.println("\t\t\t km\t- normal k-means");
+		System.out.println("\t\t\t bkm\t- bisecting k-means, for large numbers of clusters");
+		System.out.println("\t\t\t pnn\t- pairwise nearest neighbor, O(N^2): combine with -w or -n on large data");
+		System.out.println("\t\t\t ga\t- genetic algorithm with PNN crossover");
+		System.out.println("\t\t-g <iterations>");
+		System.out.println("\t\t\t group data vectors by cluster every n iterations (default: 0, disabled)");
+		System.out.println("\t\t-z <curve>");
+		System.out.println("\t\t\t order data vectors along a space-filling curve after loading: hilbert, morton");
+		System.out.println("\t\t-p <precision>");
+		System.out.println("\t\t\t storage format of data vectors: auto, double (default), float, int32, int16");
+		System.out.println("\t\t-l <format>");
+		System.out.println("\t\t\t storage format of cluster labels and distances: full (default), compact");
+		System.out.println("\t\t-x <location>");
+		System.out.println("\t\t\t location of the data matrix: heap (default), direct (outside the Java heap)");
+		System.out.println("\t\t-d <on|off>");
+		System.out.println("\t\t\t collapse identical data vectors into weighted vectors (default: off)");
+		System.out.println("\t\t-w <coreset size>");
+		System.out.println("\t\t\t run the algorithm on a weighted sample of the data, then refine on the full data");
+		System.out.println("\t\t-m <initial sample size>");
+		System.out.println("\t\t\t run the algorithm on a random sample, then fast k-means on 4 times larger samples and the full data");
+		System.out.println("\t\t-n <sample size>");
+		System.out.println("\t\t\t load only a uniform random sample of the input, read in a single pass");
+		System.out.println("\t\t-t <threads>");
+		System.out.println("\t\t\t worker threads of the parallel algorithms (default: number of processors)");
+		System.out.println("\t\t-e <swap selection>");
+		System.out.println("\t\t\t random swap: random (default), cost (cheapest centroid to remove, vector by its error)");
+		System.out.println("\t\t-i <trials>");
+		System.out.println("\t\t\t adaptive random swap: stop after this many trials without improvement (default: 0, 1000 trials)");
+		System.out.println("\t\t-k <on|off>");
+		System.out.println("\t\t\t bisecting k-means: polish the result with fast k-means on the full data (default: on)");
+		System.out.println("\t\t-q <milliseconds>");
+		System.out.println("\t\t\t time limit of all repeats; the best result found in time is kept (default: no limit)");
+		System.out.println("\t\t-v <on|off>");
+		System.out.println("\t\t\t print the error and the work of every iteration, and averages over the repeats (default: off)");
+		System.out.println("\t\t-f <report file name>");
+		System.out.println("\t\t\t write the results of every repeat and their statistics as JSON, or as CSV (.csv)");
+		System.out.println("\t\t-s <seed>");
+		System.out.println("\t\t\t seed of the random number generator; the same seed gives the same result (default: random)");
+		System.out.println("\t\t-b <binary file name>");
+		System.out.println("\t\t\t write the data to a binary file (.bin), which is memory-mapped when used as input");
 	}
 
 	/**
@@ -155,7 +487,7 @@ public class Clustering {
 	 */
 	public ClusteringAlgorithm algorithm;
 	
-	/* STATISTICS (unused) */
+	/* STATISTICS, printed with -v on */
 	
 	public int timesRepeated = 0;
 	/** How many times CI 0 was reached across all repeats */
@@ -165,6 +497,8 @@ public class Clustering {
 	public double cumulativeCI = 0;
 	// (cumulative) runtime
 	public double runtimeMs = 0;
+	/** Per-repeat results, written with -f; null if not collected */
+	public RunReport report = null;
 	
 	/**
 	 * Creates a new clustering algorithm runner.
@@ -178,8 +512,50 @@ public class Clustering {
 	 * 			algorithm used for clustering
 	 */
 	public Clustering(String filename, int numberOfClusters, String realCentroidFilename, ClusteringAlgorithm algorithm) {
+		this(filename, numberOfClusters, 0, realCentroidFilename, algorithm);
+	}
+
+	/**
+	 * Creates a new clustering algorithm runner that loads a random sample of the dataset.
+	 * @param filename
+	 *            dataset file name
+	 * @param numberOfClusters
+	 *            expected number of clusters
+	 * @param sampleSize
+	 *            number of data vectors sampled while loading; 0 to load all vectors
+	 * @param realCentroidFilename
+	 *            file name for real centroid file; can be null
+	 * @param algorithm
+	 * 			algorithm used for clustering
+	 */
+	public Clustering(String filename, int numberOfClusters, int sampleSize, String realCentroidFilename, ClusteringAlgorithm algorithm) {
+		this(filename, numberOfClusters, sampleSize, new SplittableRandom().nextLong(), realCentroidFilename, algorithm);
+	}
+
+	/**
+	 * Creates a new clustering algorithm runner with a seeded random number generator. The same
+	 * seed gives the same sample and the same clustering results.
+	 * @param filename
+	 *            dataset file name
+	 * @param numberOfClusters
+	 *            expected number of clusters
+	 * @param sampleSize
+	 *            number of data vectors sampled while loading; 0 to load all vectors
+	 * @param seed
+	 *            seed of the random number generator
+	 * @param realCentroidFilename
+	 *            file name for real centroid file; can be null
+	 * @param algorithm
+	 * 			algorithm used for clustering
+	 */
+	public Clustering(String filename, int numberOfClusters, int sampleSize, long seed, String realCentroidFilename, ClusteringAlgorithm algorithm) {
 		try {
-			this.dataset = new Dataset(filename, numberOfClusters);
+			if (sampleSize > 0) {
+				this.dataset = new Dataset(filename, numberOfClusters, sampleSize, seed);
+			} else {
+				this.dataset = new Dataset(filename, numberOfClusters);
+				this.dataset.setSeed(seed);
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.err.println("Unable to read input file");
@@ -233,15 +609,32 @@ public class Clustering {
 	 *            number of repeated runs
 	 */
 	public void runMultiple(int repeats) {
+		runMultiple(repeats, StopCondition.NEVER);
+	}
+
+	/**
+	 * Repeats the selected algorithm multiple times or until stopped, best result saved in
+	 * {@link #dataset}. The condition is passed to the algorithm and checked between the
+	 * repeats; the best result so far is kept when it is met.
+	 * 
+	 * @param repeats
+	 *            number of repeated runs
+	 * @param stop
+	 *            deadline or cancellation of all repeats
+	 */
+	public void runMultiple(int repeats, StopCondition stop) {
 		long startTime = System.nanoTime();
 		System.out.println("Repeat\tMSE\t\tCI\ttime (seconds)");
 		dataset.initializeRandomCentroids();
 		double bestMSE = dataset.MSE();
-		for (int repeat = 1; repeat <= repeats; repeat++) {
+		for (int repeat = 1; repeat <= repeats && !stop.isMet(); repeat++) {
+			ClusteringEvents.Repeat event = ClusteringEvents.repeat();
+			long repeatStartTime = System.nanoTime();
 			Dataset newDataset = dataset.copy();
 			newDataset.initializeRandomCentroids();
-			algorithm.cluster(newDataset);
-			double MSE = updateStatistics(newDataset);
+			algorithm.cluster(newDataset, stop);
+			double MSE = updateStatistics(newDataset, repeat, (System.nanoTime() - repeatStartTime) / 1000000.0);
+			event.end(algorithm, newDataset, repeat, MSE);
 			if (MSE < bestMSE) {
 				int CI = -1;
 				if (newDataset.realCentroids != null) {
@@ -263,18 +656,21 @@ public class Clustering {
 	 * 
 	 * @return MSE value of the dataset to save recalculation
 	 */
-	private double updateStatistics(Dataset newDataset){
+	private double updateStatistics(Dataset newDataset, int repeat, double timeMs){
 		timesRepeated++;
+		int CI = -1;
 		if (newDataset.realCentroids != null) {
-			int CI = newDataset.centroidIndex();
+			CI = newDataset.centroidIndex();
 			cumulativeCI += CI;
 			if (CI == 0)
 				timesCI0Reached++;
 		}
 		double TSE = newDataset.TSE();
 		cumulativeTSE += TSE;
-		double MSE = TSE / dataset.data.length;
-		cumulativeNMSE += MSE / dataset.data[0].length;
+		double MSE = TSE / dataset.getTotalWeight();
+		cumulativeNMSE += MSE / dataset.getDimensions();
+		if (report != null)
+			report.addRepeat(repeat, algorithm.getIterations(), timeMs, MSE, CI);
 		return MSE;
 	}
 }
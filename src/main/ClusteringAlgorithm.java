@@ -11,5 +11,45 @@ public interface ClusteringAlgorithm {
 	 * @param maxIterations Exit after this many iterations if the algorithm hasn't converged.
 	 */
 	void cluster(Dataset dataset, int maxIterations);
+
+	/**
+	 * Run clustering until convergence, or until the stop condition is met. The condition is
+	 * checked between iterations; when it is met the run stops and the dataset holds the best
+	 * solution found so far, with consistent centroids and partitions.
+	 * @param dataset The dataset object to run the clustering on.
+	 * @param stop Deadline or cancellation of the run. Ignored by algorithms that do not
+	 *             support stopping early.
+	 */
+	default void cluster(Dataset dataset, StopCondition stop) {
+		cluster(dataset);
+	}
+	/**
+	 * Run clustering with maximum number of iterations, or until the stop condition is met
+	 * @param dataset The dataset object to run the clustering on.
+	 * @param maxIterations Exit after this many iterations if the algorithm hasn't converged.
+	 * @param stop Deadline or cancellation of the run. Ignored by algorithms that do not
+	 *             support stopping early.
+	 */
+	default void cluster(Dataset dataset, int maxIterations, StopCondition stop) {
+		cluster(dataset, maxIterations);
+	}
+
+	/**
+	 * Attaches a listener that is called after each iteration. The algorithms count the work
+	 * of the iterations only while a listener is attached. Ignored by algorithms that have no
+	 * iterations to report.
+	 * @param listener Listener of the following runs; null to remove.
+	 */
+	default void setListener(IterationListener listener) {
+	}
+
+	/**
+	 * @return number of iterations done by the last call to cluster(), including the
+	 * iteration that detected convergence; 0 if the algorithm has not been run or does not
+	 * count its iterations
+	 */
+	default int getIterations() {
+		return 0;
+	}
 	
 }
@@ -0,0 +1,147 @@
+/**
+ * JDK Flight Recorder events of the clustering phases: partitioning, centroid updates,
+ * algorithm iterations and repeats. A standard recording (java -XX:StartFlightRecording ...)
+ * shows where the time goes; the events appear under the "Clustering" category.
+ *
+ * The events are implemented by {@link JfrClusteringEvents}, which is loaded only if the
+ * runtime has the jdk.jfr module (8u272 or 11 and later). On other runtimes the events do
+ * nothing. The rest of the code uses only the interfaces of this class, so it does not depend
+ * on jdk.jfr. With jdk.jfr the events are disabled unless a recording is running, in which case
+ * creating and committing them costs next to nothing.
+ *
+ * An event is started by the static methods and committed, if it is recorded, by its end
+ * method.
+ */
+abstract class ClusteringEvents {
+
+    /**
+     * the implementation, chosen once when the class is initialized
+     */
+    private static final ClusteringEvents EVENTS = load();
+
+    /**
+     * Assignment of all data vectors to their nearest centroids
+     */
+    interface Partition {
+        void end(Dataset dataset, long distanceComputations);
+    }
+
+    /**
+     * Move of the centroids to the means of their clusters
+     */
+    interface UpdateCentroids {
+        void end(Dataset dataset);
+    }
+
+    /**
+     * One iteration of an algorithm: a k-means iteration, a random swap trial, a generation
+     */
+    interface Iteration {
+        /**
+         * @param distanceComputations distances calculated in the iteration; -1 if not counted
+         */
+        void end(ClusteringAlgorithm algorithm, Dataset dataset, int iteration, long distanceComputations, double TSE);
+    }
+
+    /**
+     * One repeat of {@link Clustering#runMultiple(int, StopCondition)}
+     */
+    interface Repeat {
+        void end(ClusteringAlgorithm algorithm, Dataset dataset, int repeat, double MSE);
+    }
+
+    static Partition partition() {
+        return EVENTS.beginPartition();
+    }
+
+    static UpdateCentroids updateCentroids() {
+        return EVENTS.beginUpdateCentroids();
+    }
+
+    static Iteration iteration() {
+        return EVENTS.beginIteration();
+    }
+
+    static Repeat repeat() {
+        return EVENTS.beginRepeat();
+    }
+
+    /**
+     * @return true if the iteration events are recorded, so the work of the iterations should
+     * be counted
+     */
+    static boolean isIterationRecorded() {
+        return EVENTS.iterationRecorded();
+    }
+
+    abstract Partition beginPartition();
+
+    abstract UpdateCentroids beginUpdateCentroids();
+
+    abstract Iteration beginIteration();
+
+    abstract Repeat beginRepeat();
+
+    abstract boolean iterationRecorded();
+
+    /**
+     * @return the JFR events if the runtime has jdk.jfr, otherwise events that do nothing
+     */
+    private static ClusteringEvents load() {
+        ClassLoader loader = ClusteringEvents.class.getClassLoader();
+        try {
+            Class.forName("jdk.jfr.Event", false, loader);
+            return (ClusteringEvents) Class.forName("JfrClusteringEvents", true, loader)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new Disabled();
+        }
+    }
+
+    /**
+     * Events of a runtime without jdk.jfr; a single instance serves as every event
+     */
+    private static final class Disabled extends ClusteringEvents implements Partition, UpdateCentroids, Iteration, Repeat {
+
+        @Override
+        Partition beginPartition() {
+            return this;
+        }
+
+        @Override
+        UpdateCentroids beginUpdateCentroids() {
+            return this;
+        }
+
+        @Override
+        Iteration beginIteration() {
+            return this;
+        }
+
+        @Override
+        Repeat beginRepeat() {
+            return this;
+        }
+
+        @Override
+        boolean iterationRecorded() {
+            return false;
+        }
+
+        @Override
+        public void end(Dataset dataset, long distanceComputations) {
+        }
+
+        @Override
+        public void end(Dataset dataset) {
+        }
+
+        @Override
+        public void end(ClusteringAlgorithm algorithm, Dataset dataset, int iteration, long distanceComputations, double TSE) {
+        }
+
+        @Override
+        public void end(ClusteringAlgorithm algorithm, Dataset dataset, int repeat, double MSE) {
+        }
+    }
+}
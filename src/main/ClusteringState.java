@@ -0,0 +1,74 @@
+/**
+ * Snapshot of a single clustering solution: centroids, partitioning of the data vectors
+ * and the distances of the vectors to their assigned centroids.
+ *
+ * The state does not contain the data matrix itself, so saving and restoring a solution
+ * costs O(K*D + N) regardless of the dimensionality of the data.
+ */
+public class ClusteringState {
+
+    /**
+     * data matrix the partitions refer to; not copied, only used to check that the state
+     * is restored to a dataset with the same vectors in the same order
+     */
+    final DataStorage storage;
+    /**
+     * centroids of the solution
+     */
+    final double[][] centroids;
+    /**
+     * partitioning of data vectors; null if the vectors have not been partitioned
+     */
+    final LabelArray labels;
+    /**
+     * squared distances of the data vectors to their assigned centroids; null if not available
+     */
+    final DistanceArray distances;
+    /**
+     * per-cluster statistics of the partitioning; null if not available
+     */
+    final ClusterStatistics statistics;
+
+    /**
+     * Creates a snapshot. The arrays are copied so that the snapshot is not affected by
+     * later changes to the dataset.
+     *
+     * @param storage    data matrix the partitions refer to
+     * @param centroids  centroids of the solution
+     * @param labels     partitioning of data vectors, can be null
+     * @param distances  squared distances to the assigned centroids, can be null
+     * @param statistics per-cluster statistics of the partitioning, can be null
+     */
+    ClusteringState(DataStorage storage, double[][] centroids, LabelArray labels, DistanceArray distances,
+                    ClusterStatistics statistics) {
+        this.storage = storage;
+        this.centroids = copyOf(centroids);
+        this.labels = labels == null ? null : labels.copy();
+        this.distances = distances == null ? null : distances.copy();
+        this.statistics = statistics == null ? null : new ClusterStatistics(statistics);
+    }
+
+    /**
+     * @return copy of the centroids
+     */
+    public double[][] getCentroids() {
+        return copyOf(centroids);
+    }
+
+    /**
+     * @return copy of the partitions, or null if the vectors were not partitioned
+     */
+    public int[] getPartitions() {
+        return labels == null ? null : labels.toArray();
+    }
+
+    /**
+     * @return deep copy of the given matrix
+     */
+    static double[][] copyOf(double[][] matrix) {
+        double[][] result = new double[matrix.length][];
+        for (int i = 0; i < matrix.length; i++)
+            result[i] = matrix[i].clone();
+        return result;
+    }
+}
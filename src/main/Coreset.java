@@ -0,0 +1,153 @@
+import java.util.Arrays;
+
+/**
+ * Builds coresets: small weighted samples of a dataset whose clustering cost approximates
+ * the cost of the full dataset for any set of centroids. The slow algorithms can be run on
+ * the coreset, and the resulting centroids refined with a single pass over the full data.
+ *
+ * The points are picked with sensitivity sampling: a k-means++ pass gives a rough solution,
+ * and each point is sampled with probability proportional to an upper bound of its share of
+ * the cost (far away points and points in small clusters are more likely). Each sampled point
+ * is weighted with the inverse of its probability, so the weighted cost is an unbiased
+ * estimate of the full cost.
+ *
+ * Based on O. Bachem, M. Lucic, A. Krause, "Practical Coreset Constructions for Machine
+ * Learning", arXiv:1703.06476, 2017.
+ */
+public class Coreset {
+
+    /**
+     * number of points sampled
+     */
+    private final int size;
+
+    /**
+     * @param size number of points sampled; the coreset contains at most this many distinct points
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public Coreset(int size) throws IllegalArgumentException {
+        if (size <= 0)
+            throw new IllegalArgumentException("Coreset(): size must be positive");
+        this.size = size;
+    }
+
+    /**
+     * @return number of points sampled
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Samples a coreset of the dataset. Costs a k-means++ pass, O(N*K*D). The dataset itself
+     * is not modified.
+     *
+     * @param dataset dataset to summarize, can be weighted
+     * @return new weighted dataset with the same number of clusters; its centroids are random
+     * coreset points
+     * @throws IllegalArgumentException if the sample contains fewer distinct points than clusters
+     */
+    public Dataset build(Dataset dataset) throws IllegalArgumentException {
+        DataStorage storage = dataset.storage;
+        int n = storage.size();
+        int k = dataset.getNumberOfClusters();
+
+        // k-means++ seeding, keeping the distance to the nearest seed and its index
+        double[] distances = new double[n];
+        int[] nearest = new int[n];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        int seed = dataset.randomRow();
+        for (int s = 0; s < k; s++) {
+            double[] center = storage.getRow(seed);
+            double cost = 0;
+            for (int i = 0; i < n; i++) {
+                double dist = storage.distSq(i, center);
+                if (dist < distances[i]) {
+                    distances[i] = dist;
+                    nearest[i] = s;
+                }
+                cost += dataset.weight(i) * distances[i];
+            }
+            if (s + 1 < k)
+                seed = cost > 0 ? sampleByCost(dataset, distances, cost) : dataset.randomRow();
+        }
+
+        // sensitivity bound of each point, per unit of weight
+        double[] clusterCosts = new double[k];
+        double[] clusterWeights = new double[k];
+        for (int i = 0; i < n; i++) {
+            clusterCosts[nearest[i]] += dataset.weight(i) * distances[i];
+            clusterWeights[nearest[i]] += dataset.weight(i);
+        }
+        double totalCost = 0;
+        for (double cost : clusterCosts)
+            totalCost += cost;
+        double totalWeight = dataset.getTotalWeight();
+        double averageCost = totalCost / totalWeight;
+        double alpha = 16 * (Math.log(k) + 2);
+        // sampling probabilities are stored as cumulative sums in place of the distances
+        double[] cumulative = distances;
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            int c = nearest[i];
+            double sensitivity = 4 * totalWeight / clusterWeights[c];
+            if (averageCost > 0)
+                sensitivity += alpha * distances[i] / averageCost
+                        + 2 * alpha * clusterCosts[c] / (clusterWeights[c] * averageCost);
+            sum += dataset.weight(i) * sensitivity;
+            cumulative[i] = sum;
+        }
+
+        // sample with replacement; repeated picks are merged into one point
+        int[] picks = new int[n];
+        int distinct = 0;
+        for (int s = 0; s < size; s++) {
+            int row = Arrays.binarySearch(cumulative, dataset.random.nextDouble() * sum);
+            row = Math.min(row < 0 ? -row - 1 : row + 1, n - 1);
+            if (picks[row]++ == 0)
+                distinct++;
+        }
+        if (distinct < k)
+            throw new IllegalArgumentException("build(): The coreset contains fewer distinct points than clusters");
+        int[] rows = new int[distinct];
+        double[] weights = new double[distinct];
+        int next = 0;
+        for (int i = 0; i < n; i++) {
+            if (picks[i] == 0)
+                continue;
+            double probability = (cumulative[i] - (i > 0 ? cumulative[i - 1] : 0)) / sum;
+            rows[next] = i;
+            weights[next] = picks[i] * dataset.weight(i) / (size * probability);
+            next++;
+        }
+        return dataset.subset(storage.select(rows), weights, k, null);
+    }
+
+    /**
+     * Picks a row with probability proportional to its weighted cost
+     */
+    private static int sampleByCost(Dataset dataset, double[] distances, double cost) {
+        double target = dataset.random.nextDouble() * cost;
+        double sum = 0;
+        for (int i = 0; i < distances.length; i++) {
+            sum += dataset.weight(i) * distances[i];
+            if (sum > target)
+                return i;
+        }
+        return distances.length - 1;
+    }
+
+    /**
+     * Refines centroids found on a coreset with a single pass over the full data: the data is
+     * partitioned with the given centroids and the centroids are moved to the cluster means,
+     * as in one k-means iteration.
+     *
+     * @param dataset   full dataset, its centroids are replaced
+     * @param centroids centroids found on the coreset, copied
+     */
+    public static void refine(Dataset dataset, double[][] centroids) {
+        dataset.centroids = ClusteringState.copyOf(centroids);
+        dataset.partition();
+        dataset.updateCentroids();
+    }
+}
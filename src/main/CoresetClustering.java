@@ -0,0 +1,83 @@
+/**
+ * Runs another clustering algorithm on a coreset of the data instead of the full data, and
+ * refines the result with a single k-means pass over the full data. See {@link Coreset}.
+ *
+ * Makes the slow algorithms usable on very large datasets: apart from the k-means++ pass
+ * and the final pass, their cost depends on the coreset size only.
+ */
+public class CoresetClustering implements ClusteringAlgorithm {
+
+    /**
+     * algorithm run on the coreset
+     */
+    private final ClusteringAlgorithm algorithm;
+    /**
+     * coreset builder
+     */
+    private final Coreset coreset;
+
+    /**
+     * @param algorithm    algorithm run on the coreset
+     * @param coresetSize  number of points sampled to the coreset
+     * @throws IllegalArgumentException if the coreset size is not positive
+     */
+    public CoresetClustering(ClusteringAlgorithm algorithm, int coresetSize) throws IllegalArgumentException {
+        this.algorithm = algorithm;
+        this.coreset = new Coreset(coresetSize);
+    }
+
+    /**
+     * Runs the algorithm on a coreset until convergence and refines the result on the full data
+     */
+    @Override
+    public void cluster(Dataset dataset) {
+        cluster(dataset, StopCondition.NEVER);
+    }
+
+    /**
+     * Runs the algorithm on a coreset with maximum number of iterations and refines the result
+     * on the full data
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations) {
+        cluster(dataset, maxIterations, StopCondition.NEVER);
+    }
+
+    /**
+     * Runs the algorithm on a coreset until convergence or until stopped, and refines the
+     * result on the full data. The refinement pass is always done.
+     */
+    @Override
+    public void cluster(Dataset dataset, StopCondition stop) {
+        Dataset summary = coreset.build(dataset);
+        algorithm.cluster(summary, stop);
+        Coreset.refine(dataset, summary.centroids);
+    }
+
+    /**
+     * Runs the algorithm on a coreset with maximum number of iterations or until stopped, and
+     * refines the result on the full data
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations, StopCondition stop) {
+        Dataset summary = coreset.build(dataset);
+        algorithm.cluster(summary, maxIterations, stop);
+        Coreset.refine(dataset, summary.centroids);
+    }
+
+    /**
+     * @return iterations of the algorithm on the coreset in the last run
+     */
+    @Override
+    public int getIterations() {
+        return algorithm.getIterations();
+    }
+
+    /**
+     * Attaches the listener to the algorithm run on the coreset
+     */
+    @Override
+    public void setListener(IterationListener listener) {
+        algorithm.setListener(listener);
+    }
+}
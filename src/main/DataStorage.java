@@ -0,0 +1,137 @@
+import java.nio.DoubleBuffer;
+
+/**
+ * Storage of the data matrix. The vectors can be stored in different numeric formats (see
+ * {@link StoragePrecision}), but they are always read as doubles and all accumulation is done
+ * in double precision, so centroids and error values do not depend on the format.
+ *
+ * The storage is read-only after construction and can be shared between threads.
+ */
+public interface DataStorage {
+
+    /**
+     * @return number of data vectors
+     */
+    int size();
+
+    /**
+     * @return number of components in each data vector
+     */
+    int dimensions();
+
+    /**
+     * @return format the vectors are stored in
+     */
+    StoragePrecision precision();
+
+    /**
+     * @param row       index of the data vector
+     * @param dimension index of the component
+     * @return component of the data vector
+     */
+    double get(int row, int dimension);
+
+    /**
+     * @param row index of the data vector
+     * @return copy of the data vector
+     */
+    double[] getRow(int row);
+
+    /**
+     * Read-only view of a data vector. Formats that store doubles return a view of the stored
+     * vector without copying it; other formats convert the vector to a new buffer.
+     *
+     * @param row index of the data vector
+     * @return read-only buffer containing the components of the vector, positioned at 0
+     */
+    default DoubleBuffer rowView(int row) {
+        return DoubleBuffer.wrap(getRow(row)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Calculates the squared euclidean distance between a data vector and a point. The
+     * dimensions are not checked.
+     *
+     * @param row   index of the data vector
+     * @param point point with {@link #dimensions()} components
+     * @return squared distance
+     */
+    double distSq(int row, double[] point);
+
+    /**
+     * Calculates the squared euclidean distance between two data vectors. Exact for integer
+     * formats when the result cannot overflow.
+     *
+     * @param rowA index of the first data vector
+     * @param rowB index of the second data vector
+     * @return squared distance
+     */
+    double distSq(int rowA, int rowB);
+
+    /**
+     * Adds a data vector to a sum vector
+     *
+     * @param row index of the data vector
+     * @param sum sum vector, modified
+     * @return squared norm of the data vector
+     */
+    double addTo(int row, double[] sum);
+
+    /**
+     * Subtracts a data vector from a sum vector
+     *
+     * @param row index of the data vector
+     * @param sum sum vector, modified
+     * @return squared norm of the data vector
+     */
+    double subtractFrom(int row, double[] sum);
+
+    /**
+     * Adds a weighted data vector to a sum vector
+     *
+     * @param row    index of the data vector
+     * @param sum    sum vector, modified
+     * @param weight weight of the data vector
+     * @return weighted squared norm of the data vector
+     */
+    default double addTo(int row, double[] sum, double weight) {
+        if (weight == 1)
+            return addTo(row, sum);
+        double norm = 0;
+        for (int d = 0; d < sum.length; d++) {
+            double v = get(row, d);
+            sum[d] += weight * v;
+            norm += v * v;
+        }
+        return weight * norm;
+    }
+
+    /**
+     * Subtracts a weighted data vector from a sum vector
+     *
+     * @param row    index of the data vector
+     * @param sum    sum vector, modified
+     * @param weight weight of the data vector
+     * @return weighted squared norm of the data vector
+     */
+    default double subtractFrom(int row, double[] sum, double weight) {
+        if (weight == 1)
+            return subtractFrom(row, sum);
+        double norm = 0;
+        for (int d = 0; d < sum.length; d++) {
+            double v = get(row, d);
+            sum[d] -= weight * v;
+            norm += v * v;
+        }
+        return weight * norm;
+    }
+
+    /**
+     * Creates a new storage of the same format containing the given vectors. The vectors are
+     * copied, in the given order.
+     *
+     * @param rows indices of the data vectors
+     * @return new storage
+     */
+    DataStorage select(int[] rows);
+}
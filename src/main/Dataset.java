@@ -1,11 +1,21 @@
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.DoubleBuffer;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Contains the dataset and centroid/partition information
  *
+ * The data matrix is treated as read-only: copies of the dataset share the same matrix, and
+ * only the clustering state (centroids, partitions, distances) is per-copy. This allows
+ * multiple algorithms or threads to work on a single loaded matrix.
+ *
  * @author Juho Puumalainen
  */
 public class Dataset {
@@ -20,12 +30,73 @@ public class Dataset {
     /**
      * data vectors
      */
+    DataStorage storage;
+    /**
+     * data vectors as a double matrix; the same matrix as {@link #storage} when the vectors are
+     * stored in double precision, null otherwise
+     */
     double[][] data;
+    /**
+     * row of {@link #data} for each vector in the original input order; null if the rows are
+     * in the original order
+     */
+    int[] rowOfOriginal = null;
+    /**
+     * whether {@link #storage} was created by reordering this dataset and has not been shared
+     * with a copy since, so that the next reordering may reuse its memory
+     */
+    private boolean ownsStorage = false;
+    /**
+     * off-heap storage replaced by the last reordering, whose direct buffers the next reordering
+     * reuses; null if none
+     */
+    private OffHeapStorage spareStorage = null;
+    /**
+     * weight of each data vector, in row order; null if all weights are 1. A weighted vector
+     * counts as that many identical vectors in the centroids and errors.
+     */
+    double[] weights = null;
+    /**
+     * sum of the weights, i.e. the number of vectors represented by the dataset
+     */
+    private double totalWeight;
+    /**
+     * cumulative sums of {@link #weights}, for sampling vectors by weight; created when needed
+     */
+    private double[] cumulativeWeights = null;
+    /**
+     * cluster label of each data vector; null if not partitioned
+     */
+    LabelArray labels = null;
     /**
      * partitioning of data vectors (each value is an index to corresponding
-     * centroid)
+     * centroid); the same array as {@link #labels} with int labels, null with compact labels
      */
     int[] partitions = null;
+    /**
+     * squared distance from each data vector to its assigned centroid, updated when the
+     * vectors are partitioned; null if not partitioned
+     */
+    DistanceArray distances = null;
+    /**
+     * store labels in the smallest type that fits the number of clusters and distances as floats
+     */
+    private boolean compactPartitions = false;
+    /**
+     * per-cluster sizes, sums and squared norms of the current partitioning; kept up to date
+     * whenever the vectors are partitioned
+     */
+    ClusterStatistics statistics = null;
+    /**
+     * vectors with the largest distance to their centroid in the last partitioning pass;
+     * candidates for relocating the centroids of empty clusters
+     */
+    FarthestPoints farthestPoints = null;
+    /**
+     * counters of the partitioning work, attached by an algorithm with a listener or while its
+     * iterations are recorded by JFR; null when nothing is counted. Not copied.
+     */
+    OperationCounters counters = null;
     /**
      * centroids; null if not initialized
      */
@@ -36,6 +107,31 @@ public class Dataset {
      */
     double[][] realCentroids = null;
 
+    /**
+     * maximum number of blocks of {@link #partition(ExecutorService)}; each block has its own
+     * cluster statistics
+     */
+    private static final int PARTITION_BLOCKS = 64;
+    /**
+     * minimum number of data vectors in a block of {@link #partition(ExecutorService)}
+     */
+    private static final int MIN_BLOCK_SIZE = 1024;
+
+    /**
+     * Group the data vectors by cluster after this many algorithm iterations; 0 if disabled
+     */
+    private int regroupInterval = 0;
+    /**
+     * Iterations since the data vectors were last grouped by cluster
+     */
+    private int iterationsSinceRegroup = 0;
+
+    /**
+     * Random number stream of the dataset, used for all random choices of the algorithms run
+     * on it. Each copy gets an independent stream split from this one, so runs on copies do not
+     * share a generator and the results depend only on the seed, not on thread scheduling.
+     */
+    SplittableRandom random = new SplittableRandom();
 
     /**
      * Constructs dataset from pre-loaded matrix. Centroids initialized to random vectors.
@@ -55,14 +151,56 @@ public class Dataset {
                     throw new IllegalArgumentException("Data dimensions don't match");
             }
         }
-        this.data = data;
+        setStorage(new DoubleStorage(data));
+        setWeights(null);
+        this.numberOfClusters = numberOfClusters;
+        initializeRandomCentroids();
+    }
+
+    /**
+     * Constructs dataset from a data storage, for example a memory-mapped binary file.
+     * Centroids initialized to random vectors.
+     *
+     * @param storage          the data matrix, not copied
+     * @param numberOfClusters number of clusters to calculate
+     * @throws IllegalArgumentException if the number of clusters is invalid
+     */
+    public Dataset(DataStorage storage, int numberOfClusters) throws IllegalArgumentException {
+        this(storage, null, numberOfClusters);
+    }
+
+    /**
+     * Constructs dataset of weighted data vectors. A vector with weight w affects the centroids
+     * and errors like w identical vectors. Centroids initialized to random vectors.
+     *
+     * @param storage          the data matrix, not copied
+     * @param weights          positive weight of each data vector, or null for unit weights; not copied
+     * @param numberOfClusters number of clusters to calculate
+     * @throws IllegalArgumentException if the weights or the number of clusters are invalid
+     */
+    public Dataset(DataStorage storage, double[] weights, int numberOfClusters) throws IllegalArgumentException {
+        if (numberOfClusters <= 0)
+            throw new IllegalArgumentException("Number of clusters cannot be <= 0");
+        if (numberOfClusters > storage.size())
+            throw new IllegalArgumentException("The number of clusters is greater than the number of data vectors");
+        if (weights != null) {
+            if (weights.length != storage.size())
+                throw new IllegalArgumentException("The number of weights does not match the number of data vectors");
+            for (double w : weights) {
+                if (!(w > 0) || Double.isInfinite(w))
+                    throw new IllegalArgumentException("Weights must be positive and finite");
+            }
+        }
+        setStorage(storage);
+        setWeights(weights);
         this.numberOfClusters = numberOfClusters;
         initializeRandomCentroids();
     }
 
     /**
      * Constructor that loads the training vectors from a text file. The file should contain a single vector per line
-     * and its components should be separated by whitespace.
+     * and its components should be separated by whitespace. Files with the .bin extension are mapped to memory as
+     * binary data files instead (see {@link OffHeapStorage}).
      *
      * Centroids are initialized to random vectors.
      *
@@ -75,6 +213,16 @@ public class Dataset {
     public Dataset(String filename, int numberOfClusters) throws IOException, IllegalArgumentException {
         if (numberOfClusters <= 0)
             throw new IllegalArgumentException("Number of clusters cannot be <= 0");
+        if (filename.toLowerCase().endsWith(".bin")) {
+            DataStorage storage = OffHeapStorage.map(new File(filename));
+            if (numberOfClusters > storage.size())
+                throw new IllegalArgumentException("The number of clusters is greater than the number of data vectors");
+            setStorage(storage);
+            setWeights(null);
+            this.numberOfClusters = numberOfClusters;
+            initializeRandomCentroids();
+            return;
+        }
         BufferedReader br = new BufferedReader(new FileReader(filename));
 
         int dimensions = -1;
@@ -82,16 +230,7 @@ public class Dataset {
         String line = "";
 
         while ((line = br.readLine()) != null) {
-            String[] toks = line.split("\\s+");
-            ArrayList<Double> numbers = new ArrayList<>();
-            for (String s : toks) {
-                if (s.trim().length() > 0)
-                    numbers.add(Double.parseDouble(s.trim()));
-            }
-            double[] d = new double[numbers.size()];
-            for (int i = 0; i < numbers.size(); i++) {
-                d[i] = numbers.get(i);
-            }
+            double[] d = parseLine(line);
             if (dimensions == -1)
                 dimensions = d.length;
 
@@ -108,10 +247,151 @@ public class Dataset {
 
 
         this.numberOfClusters = numberOfClusters;
-        this.data = data.toArray(new double[data.size()][data.get(0).length]);
+        setStorage(new DoubleStorage(data.toArray(new double[data.size()][data.get(0).length])));
+        setWeights(null);
         initializeRandomCentroids();
     }
 
+    /**
+     * Constructor that loads a uniform random sample of the training vectors from a file in a
+     * single pass, for files too large to load completely. Only the sample is kept in memory.
+     *
+     * A text file is streamed with reservoir sampling (Algorithm L): the number of lines to skip
+     * before the next sampled line is drawn directly, and only the sampled lines are parsed, so
+     * the dimensions of the skipped lines are not validated. The sampled vectors are in random
+     * order. From a binary file (.bin) the sampled rows are copied in file order out of the
+     * memory-mapped file, which is not read otherwise.
+     *
+     * K.-H. Li, "Reservoir-Sampling Algorithms of Time Complexity O(n(1 + log(N/n)))",
+     * ACM Transactions on Mathematical Software 20(4), 1994.
+     *
+     * Centroids are initialized to random vectors.
+     *
+     * @param filename         file name to load data matrix from, see {@link #Dataset(String, int)}
+     * @param numberOfClusters number of clusters to calculate
+     * @param sampleSize       number of vectors to sample; the whole file is loaded if it contains
+     *                         fewer vectors
+     * @throws IOException              if the file cannot be accessed
+     * @throws IllegalArgumentException if there is an issue parsing the sampled data, or the sample
+     *                                  size or the number of clusters is not a valid value
+     */
+    public Dataset(String filename, int numberOfClusters, int sampleSize) throws IOException, IllegalArgumentException {
+        this(filename, numberOfClusters, sampleSize, new SplittableRandom());
+    }
+
+    /**
+     * Constructor that loads a uniform random sample of the training vectors from a file,
+     * picking the same sample for the same seed. See {@link #Dataset(String, int, int)}.
+     *
+     * @param filename         file name to load data matrix from
+     * @param numberOfClusters number of clusters to calculate
+     * @param sampleSize       number of vectors to sample
+     * @param seed             seed of the random number stream of the dataset, see {@link #setSeed(long)}
+     * @throws IOException              if the file cannot be accessed
+     * @throws IllegalArgumentException if there is an issue parsing the sampled data, or the sample
+     *                                  size or the number of clusters is not a valid value
+     */
+    public Dataset(String filename, int numberOfClusters, int sampleSize, long seed)
+            throws IOException, IllegalArgumentException {
+        this(filename, numberOfClusters, sampleSize, new SplittableRandom(seed));
+    }
+
+    private Dataset(String filename, int numberOfClusters, int sampleSize, SplittableRandom random)
+            throws IOException, IllegalArgumentException {
+        this.random = random;
+        if (numberOfClusters <= 0)
+            throw new IllegalArgumentException("Number of clusters cannot be <= 0");
+        if (sampleSize <= 0)
+            throw new IllegalArgumentException("Sample size must be positive");
+        DataStorage storage;
+        if (filename.toLowerCase().endsWith(".bin")) {
+            storage = OffHeapStorage.map(new File(filename));
+            if (sampleSize < storage.size())
+                storage = storage.select(pickRandom(storage.size(), sampleSize, random));
+        } else {
+            storage = new DoubleStorage(sampleLines(filename, sampleSize, random));
+        }
+        if (numberOfClusters > storage.size())
+            throw new IllegalArgumentException("The number of clusters is greater than the number of data vectors");
+        this.numberOfClusters = numberOfClusters;
+        setStorage(storage);
+        setWeights(null);
+        initializeRandomCentroids();
+    }
+
+    /**
+     * Reservoir-samples the lines of a text file
+     *
+     * @return parsed sampled vectors; all vectors if the file has at most sampleSize lines
+     */
+    private static double[][] sampleLines(String filename, int sampleSize, SplittableRandom random) throws IOException {
+        double[][] reservoir = new double[sampleSize][];
+        int filled = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while (filled < sampleSize && (line = br.readLine()) != null)
+                reservoir[filled++] = parseLine(line);
+            if (filled == sampleSize) {
+                // 1 - nextDouble() is never 0
+                double w = Math.exp(Math.log(1 - random.nextDouble()) / sampleSize);
+                long next = sampleSize + (long) Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - w));
+                for (long i = sampleSize; (line = br.readLine()) != null; i++) {
+                    if (i < next)
+                        continue;
+                    reservoir[random.nextInt(sampleSize)] = parseLine(line);
+                    w *= Math.exp(Math.log(1 - random.nextDouble()) / sampleSize);
+                    next += (long) Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - w)) + 1;
+                }
+            }
+        }
+        double[][] sample = Arrays.copyOf(reservoir, filled);
+        for (double[] v : sample) {
+            if (v.length != sample[0].length)
+                throw new IllegalArgumentException("Data dimensions don't match");
+        }
+        return sample;
+    }
+
+    /**
+     * @param line line of a text data file, components separated by whitespace
+     * @return parsed vector
+     * @throws NumberFormatException if a component is not a number
+     */
+    private static double[] parseLine(String line) throws NumberFormatException {
+        String[] toks = line.split("\\s+");
+        ArrayList<Double> numbers = new ArrayList<>();
+        for (String s : toks) {
+            if (s.trim().length() > 0)
+                numbers.add(Double.parseDouble(s.trim()));
+        }
+        double[] d = new double[numbers.size()];
+        for (int i = 0; i < numbers.size(); i++) {
+            d[i] = numbers.get(i);
+        }
+        return d;
+    }
+
+    /**
+     * Constructs a dataset sharing the data matrix of another dataset. The matrix has already
+     * been validated, so no validation or initialization is done here. Clustering state is left
+     * empty.
+     *
+     * @param source dataset whose data matrix is shared
+     */
+    private Dataset(Dataset source) {
+        // the data matrix is shared from now on, so it cannot be reused when reordering
+        source.ownsStorage = false;
+        this.storage = source.storage;
+        this.data = source.data;
+        this.rowOfOriginal = source.rowOfOriginal;
+        this.weights = source.weights;
+        this.totalWeight = source.totalWeight;
+        this.cumulativeWeights = source.cumulativeWeights;
+        this.numberOfClusters = source.numberOfClusters;
+        this.regroupInterval = source.regroupInterval;
+        this.compactPartitions = source.compactPartitions;
+    }
+
     /**
      * @return expected number of clusters
      */
@@ -120,23 +400,404 @@ public class Dataset {
     }
 
     /**
-     * @return copy of loaded data matrix
+     * @return number of data vectors
+     */
+    public int getNumberOfVectors() {
+        return storage.size();
+    }
+
+    /**
+     * @return number of components in each data vector
+     */
+    public int getDimensions() {
+        return storage.dimensions();
+    }
+
+    /**
+     * @return format the data vectors are stored in
+     */
+    public StoragePrecision getStoragePrecision() {
+        return storage.precision();
+    }
+
+    /**
+     * Converts the data matrix to another storage format. Should be done right after loading,
+     * as copies of the dataset keep the old matrix and saved states cannot be restored after the
+     * conversion.
+     *
+     * @param precision new format; AUTO selects the most compact format without loss
+     * @throws IllegalArgumentException if the data cannot be stored in the requested integer format
+     */
+    public void convertStorage(StoragePrecision precision) throws IllegalArgumentException {
+        setStorage(precision.store(storage));
+        if (labels != null)
+            updateClusterStatistics(); // float conversion may change the values
+    }
+
+    /**
+     * Moves the data matrix to direct buffers outside the Java heap (see {@link OffHeapStorage}).
+     * The vectors are stored as doubles, so data in a compact format takes more memory after
+     * the move. Should be done right after loading, like {@link #convertStorage(StoragePrecision)}.
+     */
+    public void moveOffHeap() {
+        setStorage(new OffHeapStorage(storage));
+        if (labels != null)
+            updateClusterStatistics();
+    }
+
+    /**
+     * @return true if the data matrix is stored outside the Java heap
+     */
+    public boolean isOffHeap() {
+        return storage instanceof OffHeapStorage;
+    }
+
+    /**
+     * Writes the data vectors to a binary data file, in the original order. The file can be
+     * loaded faster than a text file, and it is mapped to memory instead of read to the heap.
+     *
+     * @param filename destination file name, should have the .bin extension
+     * @throws IOException if the file cannot be written
+     */
+    public void writeBinary(String filename) throws IOException {
+        OffHeapStorage.write(storage, rowOfOriginal, new File(filename));
+    }
+
+    /**
+     * @return number of vectors represented by the dataset: the sum of the weights, or the
+     * number of data vectors if the vectors are not weighted
+     */
+    public double getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * @param vector index of a data vector in the original order
+     * @return weight of the vector
+     */
+    public double getWeight(int vector) {
+        return weight(row(vector));
+    }
+
+    /**
+     * @param row row of a data vector
+     * @return weight of the vector
+     */
+    double weight(int row) {
+        return weights == null ? 1 : weights[row];
+    }
+
+    /**
+     * Replaces the weights and updates the dependent values
+     *
+     * @param weights weights in row order, or null for unit weights
+     */
+    private void setWeights(double[] weights) {
+        this.weights = weights;
+        this.cumulativeWeights = null;
+        if (weights == null) {
+            totalWeight = storage.size();
+        } else {
+            totalWeight = 0;
+            for (double w : weights)
+                totalWeight += w;
+        }
+    }
+
+    /**
+     * Picks a random data vector with probability proportional to its weight, i.e. uniformly
+     * among the vectors the dataset represents.
+     *
+     * @return row of the picked vector
+     */
+    int randomRow() {
+        if (weights == null)
+            return random.nextInt(storage.size());
+        if (cumulativeWeights == null) {
+            double[] cumulative = new double[weights.length];
+            double sum = 0;
+            for (int i = 0; i < weights.length; i++) {
+                sum += weights[i];
+                cumulative[i] = sum;
+            }
+            cumulativeWeights = cumulative;
+        }
+        double target = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int row = Arrays.binarySearch(cumulativeWeights, target);
+        row = row < 0 ? -row - 1 : row + 1;
+        return Math.min(row, cumulativeWeights.length - 1);
+    }
+
+    /**
+     * 64-bit finalizer of MurmurHash3: every bit of the input affects every bit of the result
+     */
+    private static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Collapses identical data vectors into a single vector weighted by the number of copies.
+     * Each distinct vector is then compared with the centroids only once per iteration. The
+     * clustering result is the same as with the duplicates, and the original order is kept for
+     * {@link #getData()} and {@link #getPartitions()}, which still return every input vector.
+     * Previously saved states cannot be restored afterwards.
+     *
+     * Vectors are compared component by component, including the sign of zero.
+     *
+     * @return compression ratio: number of vectors before the collapse divided by the number after
+     * @throws IllegalArgumentException if there are fewer distinct vectors than clusters
+     */
+    public double deduplicate() throws IllegalArgumentException {
+        int n = storage.size();
+        int dimensions = storage.dimensions();
+        // open addressing hash table of representative rows, -1 for empty slots, at most half full
+        if (n > 1 << 29)
+            throw new IllegalArgumentException("deduplicate(): Too many data vectors");
+        int capacity = Integer.highestOneBit(Math.max(1, n) * 2 - 1) * 2;
+        int slotBits = Integer.numberOfTrailingZeros(capacity);
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        int[] representative = new int[n];
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            long hash = 0;
+            for (int d = 0; d < dimensions; d++)
+                hash = hash * 0x9E3779B97F4A7C15L + mix64(Double.doubleToLongBits(storage.get(i, d)));
+            // the high bits depend on all bits of the components; integer-valued components
+            // differ only in the high bits of their representation
+            int slot = (int) (mix64(hash) >>> (64 - slotBits));
+            while (table[slot] >= 0 && !sameVector(table[slot], i))
+                slot = (slot + 1) & (capacity - 1);
+            if (table[slot] < 0) {
+                table[slot] = i;
+                distinct++;
+            }
+            representative[i] = table[slot];
+        }
+        if (distinct < numberOfClusters)
+            throw new IllegalArgumentException("deduplicate(): There are fewer distinct vectors than clusters");
+        if (distinct == n)
+            return 1;
+
+        // the first copy of each vector is kept
+        int[] newRow = new int[n];
+        int[] keptRows = new int[distinct];
+        double[] newWeights = new double[distinct];
+        int next = 0;
+        for (int i = 0; i < n; i++) {
+            if (representative[i] == i) {
+                keptRows[next] = i;
+                newRow[i] = next++;
+            } else {
+                newRow[i] = newRow[representative[i]];
+            }
+            newWeights[newRow[i]] += weight(i);
+        }
+        int[] newRowOfOriginal = new int[rowOfOriginal == null ? n : rowOfOriginal.length];
+        for (int i = 0; i < newRowOfOriginal.length; i++)
+            newRowOfOriginal[i] = newRow[row(i)];
+
+        setStorage(storage.select(keptRows));
+        rowOfOriginal = newRowOfOriginal;
+        setWeights(newWeights);
+        if (labels != null) {
+            setLabels(labels.select(keptRows));
+            distances = distances.select(keptRows);
+            updateClusterStatistics();
+        }
+        return (double) n / distinct;
+    }
+
+    /**
+     * @return true if the two rows contain the same vector
+     */
+    private boolean sameVector(int rowA, int rowB) {
+        for (int d = 0; d < storage.dimensions(); d++) {
+            if (Double.doubleToLongBits(storage.get(rowA, d)) != Double.doubleToLongBits(storage.get(rowB, d)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the data matrix
+     */
+    private void setStorage(DataStorage storage) {
+        this.storage = storage;
+        this.data = storage instanceof DoubleStorage ? ((DoubleStorage) storage).rows : null;
+        ownsStorage = false;
+        spareStorage = null;
+    }
+
+    /**
+     * Selects how the partitioning is stored. With compact partitions the labels take one byte
+     * per vector when there are at most 256 clusters and two bytes when there are at most 65536,
+     * and the distances to the centroids are stored as floats. This cuts the memory used per
+     * vector from 12 bytes to 5 or 6, at the cost of an occasional extra full search in fast
+     * k-means caused by the rounded distances.
+     *
+     * @param compact true to use compact partitions, false for int labels and double distances
+     */
+    public void setCompactPartitions(boolean compact) {
+        compactPartitions = compact;
+        if (labels != null && centroids != null)
+            allocatePartitions();
+    }
+
+    /**
+     * @return true if the partitioning is stored in compact form
+     */
+    public boolean isCompactPartitions() {
+        return compactPartitions;
+    }
+
+    /**
+     * Replaces the label array
+     */
+    private void setLabels(LabelArray labels) {
+        this.labels = labels;
+        this.partitions = labels instanceof LabelArray.IntLabels ? ((LabelArray.IntLabels) labels).labels : null;
+    }
+
+    /**
+     * Makes sure that the label and distance arrays match the data size, number of clusters and
+     * the compact setting. Existing values are kept when the arrays are converted.
+     */
+    private void allocatePartitions() {
+        int n = storage.size();
+        if (labels == null || !labels.suits(n, centroids.length, compactPartitions)) {
+            LabelArray newLabels = LabelArray.allocate(n, centroids.length, compactPartitions);
+            if (labels != null && labels.size() == n) {
+                for (int i = 0; i < n; i++)
+                    newLabels.set(i, labels.get(i));
+            }
+            setLabels(newLabels);
+        }
+        if (distances == null || !distances.suits(n, compactPartitions)) {
+            DistanceArray newDistances = DistanceArray.allocate(n, compactPartitions);
+            if (distances != null && distances.size() == n) {
+                for (int i = 0; i < n; i++)
+                    newDistances.set(i, distances.get(i));
+            }
+            distances = newDistances;
+        }
+    }
+
+    /**
+     * Read-only view of the data matrix in the original order, without copying it. The view
+     * keeps showing the same matrix if the dataset is later reordered or converted.
+     *
+     * @return view of the data vectors
+     */
+    public DataStorage getDataView() {
+        ownsStorage = false;
+        return rowOfOriginal == null ? storage : new PermutedStorage(storage, rowOfOriginal);
+    }
+
+    /**
+     * @param vector index of a data vector in the original order
+     * @return read-only view of the vector; not copied when the data is stored as doubles
+     */
+    public DoubleBuffer getVectorView(int vector) {
+        ownsStorage = false;
+        return storage.rowView(row(vector));
+    }
+
+    /**
+     * @return read-only views of the data vectors in the original order; see {@link #getDataView()}
+     */
+    public Iterable<DoubleBuffer> getVectorViews() {
+        DataStorage view = getDataView();
+        return () -> new Iterator<DoubleBuffer>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < view.size();
+            }
+
+            @Override
+            public DoubleBuffer next() {
+                if (next >= view.size())
+                    throw new NoSuchElementException();
+                return view.rowView(next++);
+            }
+        };
+    }
+
+    /**
+     * @param vector index of a data vector in the original order
+     * @return cluster of the vector
+     */
+    public int getPartition(int vector) {
+        return labels.get(row(vector));
+    }
+
+    /**
+     * Read-only view of a centroid, without copying it. The view shows changes made to the
+     * centroid vector in place, but the algorithms usually replace the vectors with new ones;
+     * get a new view after running an algorithm.
+     *
+     * @param cluster cluster index
+     * @return view of the centroid
+     */
+    public DoubleBuffer getCentroidView(int cluster) {
+        return DoubleBuffer.wrap(centroids[cluster]).asReadOnlyBuffer();
+    }
+
+    /**
+     * @param cluster cluster index
+     * @return read-only view of the real centroid, or null if not available
+     */
+    public DoubleBuffer getRealCentroidView(int cluster) {
+        if (realCentroids == null)
+            return null;
+        return DoubleBuffer.wrap(realCentroids[cluster]).asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies the whole matrix; see {@link #getDataView()} for access without copying.
+     *
+     * @return copy of loaded data matrix, in the original order
      */
     public double[][] getData() {
-        double[][] result = new double[data.length][data[0].length];
-        for(int i = 0; i < data.length; i++)
-            result[i] = Arrays.copyOf(data[i], data[i].length);
+        int n = rowOfOriginal == null ? storage.size() : rowOfOriginal.length;
+        double[][] result = new double[n][];
+        for(int i = 0; i < n; i++)
+            result[i] = storage.getRow(row(i));
         return result;
     }
 
     /**
-     * @return copy of data vector partitions
+     * See {@link #getPartition(int)} for access without copying.
+     *
+     * @return copy of data vector partitions, in the original order of the vectors
      */
     public int[] getPartitions() {
-        return Arrays.copyOf(partitions, partitions.length);
+        if (rowOfOriginal == null)
+            return labels.toArray();
+        int[] result = new int[rowOfOriginal.length];
+        for (int i = 0; i < result.length; i++)
+            result[i] = labels.get(rowOfOriginal[i]);
+        return result;
     }
 
     /**
+     * @param originalIndex index of a vector in the original input order
+     * @return row of the vector in the data matrix
+     */
+    int row(int originalIndex) {
+        return rowOfOriginal == null ? originalIndex : rowOfOriginal[originalIndex];
+    }
+
+    /**
+     * See {@link #getCentroidView(int)} for access without copying.
+     *
      * @return copy of calculated centroids
      */
     public double[][] getCentroids() {
@@ -147,6 +808,8 @@ public class Dataset {
     }
 
     /**
+     * See {@link #getRealCentroidView(int)} for access without copying.
+     *
      * @return copy of loaded real centroids, or null if not available
      */
     public double[][] getRealCentroids() {
@@ -159,29 +822,82 @@ public class Dataset {
     }
 
     /**
+     * Copies only the clustering state, which costs O(K*D + N); the data matrix is shared.
+     * The copy gets a random number stream split from the stream of this dataset.
+     *
      * @return new copy of the object with shallow copy of the data vectors and
      * deep copy of partitions and centroids
      */
     public Dataset copy() {
-        Dataset copy = new Dataset(data, numberOfClusters);
-        if (partitions != null)
-            copy.partitions = partitions.clone();
-
-        if (centroids != null) {
-            copy.centroids = new double[centroids.length][];
-            for (int i = 0; i < centroids.length; i++)
-                copy.centroids[i] = centroids[i].clone();
-        }
+        return copy(random.split());
+    }
 
-        if (realCentroids != null) {
-            copy.realCentroids = new double[realCentroids.length][];
-            for (int i = 0; i < realCentroids.length; i++)
-                copy.realCentroids[i] = realCentroids[i].clone();
-        }
+    /**
+     * Copies the clustering state with the given random number stream. Does not modify this
+     * dataset, apart from marking its data matrix as shared, so copies can be made concurrently
+     * by several threads as long as no thread modifies this dataset.
+     *
+     * @param random random number stream of the copy
+     * @return new copy of the object
+     */
+    Dataset copy(SplittableRandom random) {
+        Dataset copy = new Dataset(this);
+        copy.random = random;
+        if (labels != null)
+            copy.setLabels(labels.copy());
+        if (distances != null)
+            copy.distances = distances.copy();
+        if (statistics != null)
+            copy.statistics = new ClusterStatistics(statistics);
+        if (centroids != null)
+            copy.centroids = ClusteringState.copyOf(centroids);
+        if (realCentroids != null)
+            copy.realCentroids = ClusteringState.copyOf(realCentroids);
 
         return copy;
     }
 
+    /**
+     * Restarts the random number stream of the dataset. Algorithms run on the dataset, and on
+     * copies made after this, make the same random choices for the same seed, regardless of the
+     * number of threads.
+     *
+     * @param seed seed of the random number stream
+     */
+    public void setSeed(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Saves the current clustering solution. Can be used to revert speculative changes
+     * without re-partitioning the data.
+     *
+     * @return snapshot of centroids, partitions and distances
+     */
+    public ClusteringState saveState() {
+        return new ClusteringState(storage, centroids, labels, distances, statistics);
+    }
+
+    /**
+     * Restores a clustering solution saved with {@link #saveState()}. The state can be
+     * restored multiple times.
+     *
+     * @param state previously saved state of this dataset (or a copy of it)
+     * @throws IllegalArgumentException if the state does not match the dataset
+     */
+    public void restoreState(ClusteringState state) throws IllegalArgumentException {
+        if (state.labels != null && state.labels.size() != storage.size()) {
+            throw new IllegalArgumentException("restoreState(): State does not match the number of data vectors");
+        }
+        if (state.labels != null && state.storage != storage) {
+            throw new IllegalArgumentException("restoreState(): State was saved for a different data matrix or ordering");
+        }
+        centroids = ClusteringState.copyOf(state.centroids);
+        setLabels(state.labels == null ? null : state.labels.copy());
+        distances = state.distances == null ? null : state.distances.copy();
+        statistics = state.statistics == null ? null : new ClusterStatistics(state.statistics);
+    }
+
     /**
      * Loads real centroids from file. File should contain a single vector per line, components separated by whitespace.
      *
@@ -209,7 +925,7 @@ public class Dataset {
                 d[i] = numbers.get(i);
             }
 
-            if (d.length != data[0].length) {
+            if (d.length != storage.dimensions()) {
                 throw new IllegalArgumentException("loadRealCentroids(): Centroid dimensions don't match with data");
             }
 
@@ -227,76 +943,472 @@ public class Dataset {
     }
 
     /**
-     * Generates new partitioning based on current centroids
+     * Generates new partitioning based on current centroids. The per-cluster statistics are
+     * accumulated in the same pass.
 	 * @return TSE for the partitioning of the dataset
      */
     public double partition() {
-        if (partitions == null)
-            partitions = new int[data.length];
-		double TSE = 0;
-		for (int i = 0; i < data.length; i++) {
-			partitions[i] = Dataset.nearestIndex(data[i], centroids);
-			TSE += Dataset.distSq(data[i], centroids[partitions[i]]);
-		}
-		return TSE;
+        return partition(null, 1);
+    }
+
+    /**
+     * Generates new partitioning based on current centroids like {@link #partition()}, with the
+     * data split into blocks of rows that are partitioned concurrently. Each block accumulates
+     * its own cluster statistics, which are added up in block order. The blocks do not depend
+     * on the number of threads, so neither does the result.
+     *
+     * @param pool threads to partition the blocks on; null to partition them in this thread
+     * @return TSE for the partitioning of the dataset
+     */
+    double partition(ExecutorService pool) {
+        int n = storage.size();
+        return partition(pool, (int) Math.max(1, Math.min(PARTITION_BLOCKS, ((long) n + MIN_BLOCK_SIZE - 1) / MIN_BLOCK_SIZE)));
+    }
+
+    /**
+     * Partitions the data in the given number of blocks of rows. A single block is accumulated
+     * directly into the statistics of the dataset.
+     *
+     * @param pool   threads to partition the blocks on; null to partition them in this thread
+     * @param blocks number of blocks, at least 1
+     * @return TSE for the partitioning of the dataset
+     */
+    private double partition(ExecutorService pool, int blocks) {
+        for (double[] centroid : centroids) {
+            if (centroid.length != storage.dimensions())
+                throw new IllegalArgumentException("partition(): Centroid dimension does not match the data dimension");
+        }
+        ClusteringEvents.Partition event = ClusteringEvents.partition();
+        beginPartitioning();
+        int n = storage.size();
+        double TSE;
+        if (blocks == 1) {
+            TSE = partitionRows(0, n, statistics, farthestPoints, counters);
+        } else {
+            ClusterStatistics[] blockStatistics = new ClusterStatistics[blocks];
+            FarthestPoints[] blockFarthest = new FarthestPoints[blocks];
+            OperationCounters[] blockCounters = new OperationCounters[blocks];
+            double[] blockErrors = new double[blocks];
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int b = 0; b < blocks; b++) {
+                int block = b;
+                int from = (int) ((long) n * b / blocks);
+                int to = (int) ((long) n * (b + 1) / blocks);
+                blockStatistics[b] = new ClusterStatistics(centroids.length, storage.dimensions());
+                blockFarthest[b] = new FarthestPoints(centroids.length);
+                blockCounters[b] = counters != null ? new OperationCounters() : null;
+                tasks.add(() -> {
+                    blockErrors[block] = partitionRows(from, to, blockStatistics[block], blockFarthest[block],
+                            blockCounters[block]);
+                    return null;
+                });
+            }
+            invokeAll(pool, tasks);
+            TSE = 0;
+            for (int b = 0; b < blocks; b++) {
+                statistics.addAll(blockStatistics[b]);
+                farthestPoints.offerAll(blockFarthest[b]);
+                TSE += blockErrors[b];
+                if (counters != null)
+                    counters.changedLabels += blockCounters[b].changedLabels;
+            }
+        }
+        if (counters != null)
+            counters.distanceComputations += (long) n * centroids.length;
+        event.end(this, (long) n * centroids.length);
+        return TSE;
+    }
+
+    /**
+     * Assigns the data vectors of the given rows to their nearest centroids: the nearest
+     * centroid search of {@link #partition()} and {@link #partition(ExecutorService)}. Blocks of
+     * rows can be partitioned concurrently, as they write disjoint elements of the labels and
+     * distances.
+     *
+     * @param from       first row
+     * @param to         row after the last one
+     * @param statistics cluster statistics the vectors are added to
+     * @param farthest   candidates for relocating centroids, offered every vector
+     * @param counters   counters of the changed labels; null to not count them
+     * @return TSE of the rows
+     */
+    private double partitionRows(int from, int to, ClusterStatistics statistics, FarthestPoints farthest,
+                                 OperationCounters counters) {
+        double TSE = 0;
+        for (int i = from; i < to; i++) {
+            int label = -1;
+            double distance = Double.POSITIVE_INFINITY;
+            for (int c = 0; c < centroids.length; c++) {
+                double dist = storage.distSq(i, centroids[c]);
+                if (dist < distance) {
+                    distance = dist;
+                    label = c;
+                }
+            }
+            if (counters != null && labels.get(i) != label)
+                counters.changedLabels++;
+            labels.set(i, label);
+            distances.set(i, distance);
+            statistics.add(storage, i, label, weight(i));
+            farthest.offer(i, distance);
+            TSE += weight(i) * distance;
+        }
+        return TSE;
+    }
+
+    /**
+     * Runs tasks on a pool and waits for all of them
+     *
+     * @param pool  threads to run the tasks on; null to run them in this thread, in order
+     * @param tasks tasks to run
+     * @throws IllegalStateException if interrupted, or if a task throws a checked exception
+     */
+    static <T> List<T> invokeAll(ExecutorService pool, List<Callable<T>> tasks) throws IllegalStateException {
+        List<T> results = new ArrayList<>();
+        try {
+            if (pool == null) {
+                for (Callable<T> task : tasks)
+                    results.add(task.call());
+            } else {
+                for (Future<T> future : pool.invokeAll(tasks))
+                    results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("invokeAll(): Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("invokeAll(): " + e.getCause(), e.getCause());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("invokeAll(): " + e, e);
+        }
+        return results;
     }
 
     /**
-     * Updates centroids based on partition average vectors
+     * Prepares a partitioning pass: allocates the partitions and distances and resets the
+     * per-cluster statistics. Algorithms with their own partitioning must call this and then
+     * {@link #assign(int, int, double)} every vector.
+     */
+    void beginPartitioning() {
+        allocatePartitions();
+        if (statistics == null || statistics.numberOfClusters() != centroids.length
+                || statistics.sums[0].length != storage.dimensions())
+            statistics = new ClusterStatistics(centroids.length, storage.dimensions());
+        else
+            statistics.clear();
+        if (farthestPoints == null || farthestPoints.capacity() != centroids.length)
+            farthestPoints = new FarthestPoints(centroids.length);
+        else
+            farthestPoints.clear();
+    }
+
+    /**
+     * Assigns a data vector to a cluster during a partitioning pass
+     *
+     * @param i        data vector index
+     * @param label    cluster index
+     * @param distance squared distance between the vector and the cluster centroid
+     */
+    void assign(int i, int label, double distance) {
+        if (counters != null && labels.get(i) != label)
+            counters.changedLabels++;
+        labels.set(i, label);
+        distances.set(i, distance);
+        statistics.add(storage, i, label, weight(i));
+        farthestPoints.offer(i, distance);
+    }
+
+    /**
+     * Recalculates the per-cluster statistics and distances from the current partitions.
+     * Needed only if the partitions were modified without partitioning the data.
+     */
+    void updateClusterStatistics() {
+        LabelArray current = labels;
+        beginPartitioning();
+        if (counters != null)
+            counters.distanceComputations += storage.size();
+        for (int i = 0; i < storage.size(); i++) {
+            int label = current.get(i);
+            assign(i, label, storage.distSq(i, centroids[label]));
+        }
+    }
+
+    /**
+     * Updates centroids based on partition average vectors.
+     * The averages come from the statistics gathered during partitioning, so this is O(K*D).
+     *
+     * If a cluster is left without data vectors, its centroid is relocated to the vector with
+     * the largest error, and that vector is moved to the cluster.
      */
     public void updateCentroids() {
-        if (partitions == null) {
+        if (labels == null || statistics == null) {
             throw new RuntimeException("updateCentroids(): Cannot calculate centroids; "
                     + "partitions==null");
         }
-        double[][] sums = new double[centroids.length][data[0].length];
-        int[] numberOfPoints = new int[centroids.length];
-        for (int i = 0; i < data.length; i++) {
-            for (int d = 0; d < data[i].length; d++) {
-                sums[partitions[i]][d] += data[i][d];
-            }
-            numberOfPoints[partitions[i]]++;
+        ClusteringEvents.UpdateCentroids event = ClusteringEvents.updateCentroids();
+        relocateEmptyClusters();
+        for (int c = 0; c < centroids.length; c++) {
+            if (statistics.sizes[c] > 0)
+                centroids[c] = statistics.mean(c);
         }
+        event.end(this);
+    }
 
+    /**
+     * Moves the vectors with the largest errors into empty clusters. The candidates were
+     * collected during partitioning. A vector is not taken from a cluster it is the only member
+     * of, and vectors with zero error are not used since they already lie on their centroid.
+     * If there are no suitable candidates, the centroid of the empty cluster is left in place.
+     */
+    private void relocateEmptyClusters() {
+        int[] candidates = null;
+        int next = 0;
         for (int c = 0; c < centroids.length; c++) {
-            for (int d = 0; d < sums[c].length; d++) {
-                sums[c][d] = sums[c][d] / numberOfPoints[c];
+            if (statistics.sizes[c] > 0)
+                continue;
+            if (candidates == null)
+                candidates = farthestPoints.farthestFirst();
+            while (next < candidates.length) {
+                int i = candidates[next++];
+                int donor = labels.get(i);
+                if (statistics.sizes[donor] > 1 && distances.get(i) > 0) {
+                    statistics.remove(storage, i, donor, weight(i));
+                    statistics.add(storage, i, c, weight(i));
+                    labels.set(i, c);
+                    distances.set(i, 0);
+                    break;
+                }
             }
-            centroids[c] = sums[c];
         }
     }
 
+    /**
+     * Reorders the data matrix so that the vectors of each cluster are stored contiguously,
+     * in cluster order. Per-cluster work then becomes a sequential scan, and consecutive
+     * vectors tend to have the same nearest centroid during partitioning.
+     *
+     * The vectors are copied into a new matrix (copies of this dataset keep the old one), and
+     * the partitions and distances are permuted along with them. The original order is kept in
+     * {@link #rowOfOriginal}, so {@link #getData()} and {@link #getPartitions()} are not affected.
+     * Previously saved states cannot be restored after reordering.
+     */
+    public void groupByCluster() {
+        if (labels == null) {
+            throw new IllegalStateException("groupByCluster(): Data vectors are not partitioned");
+        }
+        // counting sort by cluster label
+        int[] start = new int[centroids.length + 1];
+        for (int i = 0; i < labels.size(); i++)
+            start[labels.get(i) + 1]++;
+        for (int c = 0; c < centroids.length; c++)
+            start[c + 1] += start[c];
+        int[] newRow = new int[storage.size()];
+        for (int i = 0; i < newRow.length; i++)
+            newRow[i] = start[labels.get(i)]++;
+        reorder(newRow);
+        iterationsSinceRegroup = 0;
+    }
+
+    /**
+     * Reorders the data vectors along a space-filling curve, so that vectors close to each
+     * other in space are also close to each other in memory. Consecutive vectors then tend to
+     * have the same nearest centroid, which helps the caches and branch prediction during
+     * partitioning. Best done right after loading, before the dataset is copied.
+     *
+     * The original order is kept for output the same way as in {@link #groupByCluster()}.
+     *
+     * @param curve the space-filling curve to use
+     */
+    public void sortBySpaceFillingCurve(SpaceFillingCurve curve) {
+        long[] keys = curve.keys(storage);
+        Integer[] order = new Integer[storage.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        int[] newRow = new int[order.length];
+        for (int i = 0; i < order.length; i++)
+            newRow[order[i]] = i;
+        reorder(newRow);
+    }
+
+    /**
+     * Moves the data vectors to new rows. The vectors, partitions and distances are copied into
+     * new arrays and the original order is kept in {@link #rowOfOriginal}.
+     *
+     * Direct buffers are released only when the garbage collector happens to collect their
+     * objects, so an off-heap matrix that only this dataset uses is kept as a spare and the
+     * next reordering copies the vectors into it. Repeated regrouping then alternates between
+     * two sets of buffers instead of allocating a new set each time.
+     *
+     * @param newRow new row of each data vector (a permutation)
+     */
+    private void reorder(int[] newRow) {
+        int n = storage.size();
+        int[] oldRow = new int[n];
+        for (int i = 0; i < n; i++)
+            oldRow[newRow[i]] = i;
+        DataStorage oldStorage = storage;
+        boolean ownedOldStorage = ownsStorage;
+        DataStorage newStorage = spareStorage != null && storage instanceof OffHeapStorage
+                ? ((OffHeapStorage) storage).select(oldRow, spareStorage) : storage.select(oldRow);
+        if (labels != null)
+            setLabels(labels.select(oldRow));
+        if (distances != null)
+            distances = distances.select(oldRow);
+        if (farthestPoints != null)
+            farthestPoints.remap(newRow);
+
+        if (rowOfOriginal == null) {
+            rowOfOriginal = newRow;
+        } else {
+            int[] newRowOfOriginal = new int[rowOfOriginal.length];
+            for (int i = 0; i < rowOfOriginal.length; i++)
+                newRowOfOriginal[i] = newRow[rowOfOriginal[i]];
+            rowOfOriginal = newRowOfOriginal;
+        }
+        setStorage(newStorage);
+        if (weights != null)
+            setWeights(select(weights, oldRow));
+        // the heap formats are left to the garbage collector
+        if (ownedOldStorage && oldStorage instanceof OffHeapStorage)
+            spareStorage = (OffHeapStorage) oldStorage;
+        ownsStorage = true;
+    }
+
+    /**
+     * @return values at the given indices, in the given order
+     */
+    private static double[] select(double[] values, int[] indices) {
+        double[] result = new double[indices.length];
+        for (int i = 0; i < indices.length; i++)
+            result[i] = values[indices[i]];
+        return result;
+    }
+
+    /**
+     * Enables grouping the data vectors by cluster periodically while clustering.
+     * See {@link #groupByCluster()}.
+     *
+     * @param iterations group the vectors after this many algorithm iterations; 0 disables grouping
+     * @throws IllegalArgumentException if the interval is negative
+     */
+    public void setRegroupInterval(int iterations) throws IllegalArgumentException {
+        if (iterations < 0)
+            throw new IllegalArgumentException("setRegroupInterval(): iterations cannot be negative");
+        regroupInterval = iterations;
+        iterationsSinceRegroup = 0;
+    }
+
+    /**
+     * Called by the algorithms after each iteration. Groups the data vectors by cluster if
+     * periodic grouping is enabled and the interval has passed.
+     */
+    void regroupIfDue() {
+        if (regroupInterval > 0 && ++iterationsSinceRegroup >= regroupInterval)
+            groupByCluster();
+    }
+
     /**
      * Reduces the training data to given size by removing random vectors.
+     * The remaining vectors become the new original order.
      *
      * @param newSize New size of the dataset. Values in range [0, data.size]
      */
     public void reduceSize(int newSize) {
-        if (newSize > data.length) {
+        if (newSize > storage.size()) {
             throw new IllegalArgumentException("reduceSize(): newSize is larger than dataset size");
         }
         if (newSize < 0) {
             throw new IllegalArgumentException("reduceSize(): newSize cannot be negative");
         }
-        Integer[] keptIndices = pickRandom(data.length, newSize);
-        double[][] newData = new double[newSize][data[0].length];
-        int[] newPartitions = new int[newSize];
-        for (int i = 0; i < keptIndices.length; i++) {
-            newData[i] = data[keptIndices[i]];
-            newPartitions[i] = partitions[keptIndices[i]];
+        int[] keptRows = pickRandom(storage.size(), newSize, random);
+        setStorage(storage.select(keptRows));
+        setWeights(weights == null ? null : select(weights, keptRows));
+        rowOfOriginal = null;
+        setLabels(labels.select(keptRows));
+        distances = distances.select(keptRows);
+        updateClusterStatistics();
+    }
+
+    /**
+     * Creates a dataset of a random sample of the data vectors, for example for clustering a
+     * small sample before the full data. The sampled vectors are copied in their current order
+     * and keep their weights. The sample starts from a copy of the current centroids and is
+     * partitioned with them; this dataset is not modified apart from its random number stream.
+     *
+     * @param size number of sampled vectors, in range [number of clusters, number of vectors]
+     * @return new dataset with the same number of clusters
+     * @throws IllegalArgumentException if the size is out of range
+     */
+    public Dataset sample(int size) throws IllegalArgumentException {
+        return sample(size, ClusteringState.copyOf(centroids));
+    }
+
+    /**
+     * Creates a dataset of a random sample of the data vectors like {@link #sample(int)}, but
+     * starting from the given centroids. The sample is partitioned once, with these centroids.
+     *
+     * @param size      number of sampled vectors, in range [number of clusters, number of vectors]
+     * @param centroids initial centroids of the sample, not copied
+     * @return new dataset with the same number of clusters
+     * @throws IllegalArgumentException if the size is out of range
+     */
+    Dataset sample(int size, double[][] centroids) throws IllegalArgumentException {
+        if (size > storage.size())
+            throw new IllegalArgumentException("sample(): size is larger than dataset size");
+        if (size < numberOfClusters)
+            throw new IllegalArgumentException("sample(): size is smaller than the number of clusters");
+        int[] rows = pickRandom(storage.size(), size, random);
+        return subset(storage.select(rows), weights == null ? null : select(weights, rows),
+                numberOfClusters, centroids);
+    }
+
+    /**
+     * Creates a dataset of other data vectors, usually a subset of these, with the settings of
+     * this dataset except periodic regrouping, and a random number stream split from the stream
+     * of this dataset. Used by the algorithms that cluster samples or parts of the data.
+     *
+     * @param storage          data vectors, not copied
+     * @param weights          valid weights of the vectors or null, not copied
+     * @param numberOfClusters number of clusters, at most the number of vectors
+     * @param centroids        initial centroids, not copied; null for random data vectors
+     * @return new partitioned dataset
+     * @throws IllegalArgumentException if there are more clusters than vectors
+     */
+    Dataset subset(DataStorage storage, double[] weights, int numberOfClusters, double[][] centroids)
+            throws IllegalArgumentException {
+        if (numberOfClusters > storage.size())
+            throw new IllegalArgumentException("subset(): The number of clusters is greater than the number of data vectors");
+        Dataset subset = new Dataset(this);
+        subset.random = random.split();
+        subset.setStorage(storage);
+        subset.setWeights(weights);
+        subset.rowOfOriginal = null;
+        subset.numberOfClusters = numberOfClusters;
+        subset.regroupInterval = 0;
+        if (centroids == null) {
+            subset.initializeRandomCentroids();
+        } else {
+            subset.centroids = centroids;
+            subset.partition();
         }
-        data = newData;
-        partitions = newPartitions;
+        return subset;
     }
 
     /**
-     * Initializes centroids using random data vectors and re-partitions data
+     * Initializes centroids using random data vectors and re-partitions data.
+     * The vectors are copied so that modifying the centroids never modifies the shared data matrix.
+     * The centroids are distinct rows, so with collapsed duplicates no two centroids are equal.
      */
     public void initializeRandomCentroids() {
-        centroids = new double[numberOfClusters][data[0].length];
-        Integer[] centroidPointIndices = pickRandom(data.length, numberOfClusters);
+        centroids = new double[numberOfClusters][];
+        int[] centroidPointIndices = pickRandom(storage.size(), numberOfClusters, random);
         for (int i = 0; i < centroids.length; i++) {
-            centroids[i] = data[centroidPointIndices[i]];
+            centroids[i] = storage.getRow(centroidPointIndices[i]);
         }
 
         partition();
@@ -345,39 +1457,70 @@ public class Dataset {
     }
 
 	/**
+	 * Calculated from the per-cluster statistics in O(K*D), also valid if the
+	 * centroids have moved after partitioning.
+	 *
 	 * @return total squared error
 	 */
 	public double TSE() {
         double sum = 0;
+        for (int c = 0; c < centroids.length; c++) {
+            sum += clusterSSE(c);
+        }
+        return sum;
+    }
+
+    /**
+     * @param cluster cluster index
+     * @return squared error of the vectors assigned to the cluster, measured to its current centroid
+     */
+    public double clusterSSE(int cluster) {
+        return statistics.squaredError(cluster, centroids[cluster]);
+    }
 
-        for (int i = 0; i < data.length; i++) {
-            double[] point = data[i];
-            double[] centroid = centroids[partitions[i]];
-            sum += distSq(point, centroid);
+    /**
+     * @return squared error of each cluster
+     */
+    public double[] clusterSSEs() {
+        double[] result = new double[centroids.length];
+        for (int c = 0; c < centroids.length; c++) {
+            result[c] = clusterSSE(c);
         }
+        return result;
+    }
 
-        return sum;
+    /**
+     * @return number of data vectors assigned to each cluster
+     */
+    public int[] clusterSizes() {
+        return statistics.sizes.clone();
+    }
+
+    /**
+     * @return total weight of the data vectors assigned to each cluster; equal to the sizes if
+     * the vectors are not weighted
+     */
+    public double[] clusterWeights() {
+        return statistics.weights.clone();
     }
 
     public double MSE() {
-        return TSE() / (data.length);
+        return TSE() / totalWeight;
     }
 
     public double nMSE() {
-        return MSE() / data[0].length;
+        return MSE() / storage.dimensions();
     }
 
     /**
      * @return mean training vector
      */
     public double[] mean() {
-        double[] mean = new double[data[0].length];
-        for (double[] d : data) {
-            for (int i = 0; i < d.length; i++)
-                mean[i] += d[i];
-        }
+        double[] mean = new double[storage.dimensions()];
+        for (int row = 0; row < storage.size(); row++)
+            storage.addTo(row, mean, weight(row));
         for (int i = 0; i < mean.length; i++)
-            mean[i] = mean[i] / data.length;
+            mean[i] = mean[i] / totalWeight;
         return mean;
     }
 
@@ -386,13 +1529,15 @@ public class Dataset {
      */
     public double[] variances() {
         double[] mean = mean();
-        double[] variance = new double[data[0].length];
-        for (double[] d : data) {
-            for (int i = 0; i < d.length; i++)
-                variance[i] += (mean[i] - d[i]) * (mean[i] - d[i]);
+        double[] variance = new double[storage.dimensions()];
+        for (int row = 0; row < storage.size(); row++) {
+            for (int i = 0; i < variance.length; i++) {
+                double diff = mean[i] - storage.get(row, i);
+                variance[i] += weight(row) * diff * diff;
+            }
         }
         for (int i = 0; i < variance.length; i++)
-            variance[i] = variance[i] / data.length;
+            variance[i] = variance[i] / totalWeight;
 
         return variance;
     }
@@ -439,20 +1584,55 @@ public class Dataset {
     }
 
     /**
-     * Calculates array of n integers from interval [0, max[.
+     * Picks n distinct integers from interval [0, max[ with Floyd's algorithm: one random
+     * number per picked integer, and no boxing; the only extra memory is a small open
+     * addressing table of the picked integers.
+     *
+     * R. W. Floyd, J. Bentley, "Programming Pearls: A Sample of Brilliance", Communications
+     * of the ACM 30(9), 1987.
+     *
      * @param max maximum value, exclusive
      * @param n number of sampled numbers
-     * @return selected
+     * @param random random number stream
+     * @return selected, in ascending order
      */
-    private static Integer[] pickRandom(int max, int n) {
+    static int[] pickRandom(int max, int n, SplittableRandom random) {
         if (n > max) {
             throw new IllegalArgumentException(
                     "pickRandom(): n > max; interval doesn't contain n unique integers!");
         }
-        Random r = new Random();
-        HashSet<Integer> pickedNumbers = new HashSet<>();
-        while (pickedNumbers.size() < n)
-            pickedNumbers.add(r.nextInt(max));
-        return pickedNumbers.toArray(new Integer[pickedNumbers.size()]);
+        int[] table = new int[Integer.highestOneBit(Math.max(1, n) * 2 - 1) * 2];
+        Arrays.fill(table, -1);
+        int[] picked = new int[n];
+        for (int j = max - n, next = 0; j < max; j++, next++) {
+            int candidate = random.nextInt(j + 1);
+            if (!insert(table, candidate)) {
+                // already picked; j itself cannot have been picked yet
+                candidate = j;
+                insert(table, j);
+            }
+            picked[next] = candidate;
+        }
+        Arrays.sort(picked);
+        return picked;
+    }
+
+    /**
+     * Adds a non-negative integer to an open addressing table whose free slots contain -1
+     *
+     * @return false if the table already contained the integer
+     */
+    private static boolean insert(int[] table, int value) {
+        int mask = table.length - 1;
+        // Fibonacci hashing spreads consecutive integers over the table
+        int slot = (value * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+        for (; ; slot = (slot + 1) & mask) {
+            if (table[slot] == value)
+                return false;
+            if (table[slot] == -1) {
+                table[slot] = value;
+                return true;
+            }
+        }
     }
 }
@@ -0,0 +1,145 @@
+/**
+ * Squared distances of the data vectors to their assigned centroids, stored either in double
+ * or in single precision.
+ *
+ * The stored distances are used as bounds by the fast k-means partial search: a vector whose
+ * centroid did not move away from it only needs to be compared with the moved centroids. A
+ * float distance is therefore rounded down, never up, so that the bound stays conservative;
+ * the rounding can only cause an occasional unnecessary full search.
+ */
+abstract class DistanceArray {
+
+    /**
+     * Allocates a distance array
+     *
+     * @param size    number of data vectors
+     * @param compact store the distances as floats
+     * @return distance array with all distances 0
+     */
+    static DistanceArray allocate(int size, boolean compact) {
+        return compact ? new FloatDistances(new float[size]) : new DoubleDistances(new double[size]);
+    }
+
+    /**
+     * @return true if the array can be reused with the given settings
+     */
+    boolean suits(int size, boolean compact) {
+        return size() == size && isCompact() == compact;
+    }
+
+    /**
+     * @return number of distances
+     */
+    abstract int size();
+
+    /**
+     * @return true if the distances are stored as floats
+     */
+    abstract boolean isCompact();
+
+    /**
+     * @param i index of the data vector
+     * @return stored squared distance, at most the distance that was set
+     */
+    abstract double get(int i);
+
+    /**
+     * @param i        index of the data vector
+     * @param distance squared distance of the vector to its centroid
+     */
+    abstract void set(int i, double distance);
+
+    /**
+     * @return independent copy of the distances
+     */
+    abstract DistanceArray copy();
+
+    /**
+     * @param rows indices of the distances to copy, in the new order
+     * @return new array containing the given distances
+     */
+    abstract DistanceArray select(int[] rows);
+
+    private static final class DoubleDistances extends DistanceArray {
+        private final double[] distances;
+
+        DoubleDistances(double[] distances) {
+            this.distances = distances;
+        }
+
+        @Override
+        int size() {
+            return distances.length;
+        }
+
+        @Override
+        boolean isCompact() {
+            return false;
+        }
+
+        @Override
+        double get(int i) {
+            return distances[i];
+        }
+
+        @Override
+        void set(int i, double distance) {
+            distances[i] = distance;
+        }
+
+        @Override
+        DistanceArray copy() {
+            return new DoubleDistances(distances.clone());
+        }
+
+        @Override
+        DistanceArray select(int[] rows) {
+            double[] result = new double[rows.length];
+            for (int i = 0; i < rows.length; i++)
+                result[i] = distances[rows[i]];
+            return new DoubleDistances(result);
+        }
+    }
+
+    private static final class FloatDistances extends DistanceArray {
+        private final float[] distances;
+
+        FloatDistances(float[] distances) {
+            this.distances = distances;
+        }
+
+        @Override
+        int size() {
+            return distances.length;
+        }
+
+        @Override
+        boolean isCompact() {
+            return true;
+        }
+
+        @Override
+        double get(int i) {
+            return distances[i];
+        }
+
+        @Override
+        void set(int i, double distance) {
+            float rounded = (float) distance;
+            distances[i] = rounded > distance ? Math.nextDown(rounded) : rounded;
+        }
+
+        @Override
+        DistanceArray copy() {
+            return new FloatDistances(distances.clone());
+        }
+
+        @Override
+        DistanceArray select(int[] rows) {
+            float[] result = new float[rows.length];
+            for (int i = 0; i < rows.length; i++)
+                result[i] = distances[rows[i]];
+            return new FloatDistances(result);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.nio.DoubleBuffer;
+
+/**
+ * Data matrix stored as an array of double vectors.
+ */
+public class DoubleStorage implements DataStorage {
+
+    /**
+     * data vectors
+     */
+    final double[][] rows;
+
+    /**
+     * Wraps a matrix without copying it. The rows must have equal lengths.
+     *
+     * @param rows data vectors
+     */
+    public DoubleStorage(double[][] rows) {
+        this.rows = rows;
+    }
+
+    @Override
+    public int size() {
+        return rows.length;
+    }
+
+    @Override
+    public int dimensions() {
+        return rows.length > 0 ? rows[0].length : 0;
+    }
+
+    @Override
+    public StoragePrecision precision() {
+        return StoragePrecision.DOUBLE;
+    }
+
+    @Override
+    public double get(int row, int dimension) {
+        return rows[row][dimension];
+    }
+
+    @Override
+    public double[] getRow(int row) {
+        return rows[row].clone();
+    }
+
+    @Override
+    public DoubleBuffer rowView(int row) {
+        return DoubleBuffer.wrap(rows[row]).asReadOnlyBuffer();
+    }
+
+    @Override
+    public double distSq(int row, double[] point) {
+        double[] v = rows[row];
+        double sum = 0;
+        for (int d = 0; d < v.length; d++) {
+            sum += (v[d] - point[d]) * (v[d] - point[d]);
+        }
+        return sum;
+    }
+
+    @Override
+    public double distSq(int rowA, int rowB) {
+        return distSq(rowA, rows[rowB]);
+    }
+
+    @Override
+    public double addTo(int row, double[] sum) {
+        double[] v = rows[row];
+        double norm = 0;
+        for (int d = 0; d < v.length; d++) {
+            sum[d] += v[d];
+            norm += v[d] * v[d];
+        }
+        return norm;
+    }
+
+    @Override
+    public double subtractFrom(int row, double[] sum) {
+        double[] v = rows[row];
+        double norm = 0;
+        for (int d = 0; d < v.length; d++) {
+            sum[d] -= v[d];
+            norm += v[d] * v[d];
+        }
+        return norm;
+    }
+
+    @Override
+    public DoubleStorage select(int[] rows) {
+        double[][] selected = new double[rows.length][];
+        // copied in the new order so that the rows are allocated next to each other
+        for (int i = 0; i < rows.length; i++)
+            selected[i] = this.rows[rows[i]].clone();
+        return new DoubleStorage(selected);
+    }
+}
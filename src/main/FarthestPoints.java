@@ -0,0 +1,124 @@
+import java.util.Arrays;
+
+/**
+ * Keeps track of the data vectors with the largest distance to their centroid during a
+ * partitioning pass. Used for relocating the centroids of empty clusters without an extra
+ * pass over the data.
+ *
+ * Implemented as a bounded min-heap: the root is the smallest of the kept distances, so a
+ * new vector only has to be compared against the root in the common case.
+ */
+class FarthestPoints {
+
+    /**
+     * data vector indices in heap order
+     */
+    private final int[] indices;
+    /**
+     * distances corresponding to {@link #indices}
+     */
+    private final double[] distances;
+    /**
+     * number of vectors in the heap
+     */
+    private int size = 0;
+
+    /**
+     * @param capacity maximum number of vectors kept
+     */
+    FarthestPoints(int capacity) {
+        indices = new int[capacity];
+        distances = new double[capacity];
+    }
+
+    /**
+     * @return maximum number of vectors kept
+     */
+    int capacity() {
+        return indices.length;
+    }
+
+    /**
+     * Removes all vectors
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds a vector if it is among the farthest vectors seen so far.
+     *
+     * @param index    data vector index
+     * @param distance distance of the vector to its centroid
+     */
+    void offer(int index, double distance) {
+        if (size < indices.length) {
+            // sift up
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (distances[parent] <= distance)
+                    break;
+                indices[i] = indices[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            indices[i] = index;
+            distances[i] = distance;
+        } else if (size > 0 && distance > distances[0]) {
+            // replace root and sift down
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && distances[child + 1] < distances[child])
+                    child++;
+                if (distances[child] >= distance)
+                    break;
+                indices[i] = indices[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            indices[i] = index;
+            distances[i] = distance;
+        }
+    }
+
+    /**
+     * Updates the kept indices after the data vectors have been reordered
+     *
+     * @param newIndices new index of each data vector
+     */
+    void remap(int[] newIndices) {
+        for (int i = 0; i < size; i++)
+            indices[i] = newIndices[indices[i]];
+    }
+
+    /**
+     * Offers all vectors kept by another instance, for example one collected from a block of
+     * the data
+     */
+    void offerAll(FarthestPoints other) {
+        for (int i = 0; i < other.size; i++)
+            offer(other.indices[i], other.distances[i]);
+    }
+
+    /**
+     * @return indices of the kept vectors, farthest first
+     */
+    int[] farthestFirst() {
+        // sort heap positions by distance (descending), ties by vector index
+        Integer[] positions = new Integer[size];
+        for (int i = 0; i < size; i++)
+            positions[i] = i;
+        Arrays.sort(positions, (a, b) -> {
+            int cmp = Double.compare(distances[b], distances[a]);
+            return cmp != 0 ? cmp : Integer.compare(indices[a], indices[b]);
+        });
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++)
+            result[i] = indices[positions[i]];
+        return result;
+    }
+}
@@ -8,6 +8,15 @@ import java.util.Arrays;
  */
 public class FastKMeans implements ClusteringAlgorithm {
 
+    /**
+     * number of iterations done by the last run
+     */
+    private int iterations;
+    /**
+     * called after each iteration; null if none
+     */
+    private IterationListener listener;
+
     /**
      * Iterates Fast K-Means until convergence
      *
@@ -25,43 +34,100 @@ public class FastKMeans implements ClusteringAlgorithm {
      * @param maxIterations maximum number of k-means iterations
      */
     public void cluster(Dataset dataset, int maxIterations) {
+        cluster(dataset, maxIterations, StopCondition.NEVER);
+    }
+
+    /**
+     * Iterates Fast K-Means until convergence or until stopped
+     */
+    @Override
+    public void cluster(Dataset dataset, StopCondition stop) {
+        cluster(dataset, Integer.MAX_VALUE, stop);
+    }
+
+    /**
+     * Iterates Fast K-Means until convergence, until set amount of iterations have been done
+     * or until stopped. Every iteration lowers the error, so the last one is the best.
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations, StopCondition stop) {
         ArrayList<Integer> active = new ArrayList<>();
         for (int i = 0; i < dataset.centroids.length; i++) {
             active.add(i);
         }
-        double[] prevDistances = new double[dataset.data.length];
-        for (int i = 0; i < dataset.data.length; i++) {
-            prevDistances[i] = Dataset.distSq(dataset.data[i], dataset.centroids[dataset.partitions[i]]);
-        }
-        for (int iteration = 1; iteration <= maxIterations; iteration++) {
-            double[][] prevCentroids = Arrays.copyOf(dataset.centroids, dataset.centroids.length);
+        OperationCounters previousCounters = dataset.counters;
+        OperationCounters counters = listener != null || ClusteringEvents.isIterationRecorded()
+                ? new OperationCounters() : null;
+        dataset.counters = counters;
+        try {
+            // the distances are kept in the dataset so that they are copied and saved along with
+            // the partitions; they must match the current centroids before the first partial search
+            dataset.updateClusterStatistics();
+            iterations = 0;
+            for (int iteration = 1; iteration <= maxIterations && !stop.isMet(); iteration++) {
+                iterations = iteration;
+                ClusteringEvents.Iteration event = ClusteringEvents.iteration();
+                double[][] prevCentroids = Arrays.copyOf(dataset.centroids, dataset.centroids.length);
 
-            partition(prevDistances, active, dataset);
-            dataset.updateCentroids();
-            updateActiveCentroids(active, prevCentroids, dataset);
-            if (active.size() == 0) {
-                break;
+                partition(active, dataset);
+                dataset.updateCentroids();
+                updateActiveCentroids(active, prevCentroids, dataset);
+                if (counters != null) {
+                    double TSE = dataset.TSE();
+                    long changedLabels = counters.takeChangedLabels();
+                    long distanceComputations = counters.takeDistanceComputations();
+                    event.end(this, dataset, iteration, distanceComputations, TSE);
+                    if (listener != null) {
+                        listener.iterationDone(new IterationEvent(this, iteration, TSE,
+                                changedLabels, distanceComputations, active.size(), -1, Double.NaN));
+                    }
+                }
+                if (active.size() == 0) {
+                    break;
+                }
+                dataset.regroupIfDue();
             }
+        } finally {
+            dataset.counters = previousCounters;
         }
     }
 
+    @Override
+    public void setListener(IterationListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public int getIterations() {
+        return iterations;
+    }
+
     /**
      * Performs fast k-means partitioning for the dataset
      *
-     * @param prevDistances centroid distances before last iteration
-     * @param active        active centroids indices
-     * @param dataset       dataset to partition
+     * The centroid distances of the previous pass are read from the dataset before each vector
+     * is assigned again.
+     *
+     * @param active  active centroids indices
+     * @param dataset dataset to partition
      */
-    private static void partition(double[] prevDistances, ArrayList<Integer> active, Dataset dataset) {
-        for (int i = 0; i < dataset.data.length; i++) {
-            double currentDist = Dataset.distSq(dataset.data[i],
-                    dataset.centroids[dataset.partitions[i]]);
-            if (currentDist <= prevDistances[i]) {
-                partialSearch(i, currentDist, prevDistances, active, dataset);
+    private static void partition(ArrayList<Integer> active, Dataset dataset) {
+        ClusteringEvents.Partition event = ClusteringEvents.partition();
+        dataset.beginPartitioning();
+        long distanceComputations = 0;
+        for (int i = 0; i < dataset.storage.size(); i++) {
+            double currentDist = dataset.storage.distSq(i, dataset.centroids[dataset.labels.get(i)]);
+            if (currentDist <= dataset.distances.get(i)) {
+                partialSearch(i, currentDist, active, dataset);
+                distanceComputations += 1 + active.size();
             } else {
-                fullSearch(i, currentDist, prevDistances, active, dataset);
+                fullSearch(i, currentDist, dataset);
+                distanceComputations += 1 + dataset.centroids.length;
             }
         }
+        if (dataset.counters != null)
+            dataset.counters.distanceComputations += distanceComputations;
+        event.end(dataset, distanceComputations);
     }
 
     /**
@@ -70,18 +136,17 @@ public class FastKMeans implements ClusteringAlgorithm {
      * @param id          index of point
      * @param currentDist distance to current centroid
      */
-    private static void partialSearch(int id, double currentDist, double[] prevDistances, ArrayList<Integer> active, Dataset dataset) {
+    private static void partialSearch(int id, double currentDist, ArrayList<Integer> active, Dataset dataset) {
         double minDist = currentDist;
-        int nearestCentroidIndex = dataset.partitions[id];
+        int nearestCentroidIndex = dataset.labels.get(id);
         for (int centroid : active) {
-            double dist = Dataset.distSq(dataset.data[id], dataset.centroids[centroid]);
+            double dist = dataset.storage.distSq(id, dataset.centroids[centroid]);
             if (dist < minDist) {
                 minDist = dist;
                 nearestCentroidIndex = centroid;
             }
         }
-        dataset.partitions[id] = nearestCentroidIndex;
-        prevDistances[id] = minDist;
+        dataset.assign(id, nearestCentroidIndex, minDist);
     }
 
     /**
@@ -90,18 +155,17 @@ public class FastKMeans implements ClusteringAlgorithm {
      * @param id          index of point
      * @param currentDist distance to current centroid
      */
-    private static void fullSearch(int id, double currentDist, double[] prevDistances, ArrayList<Integer> active, Dataset dataset) {
+    private static void fullSearch(int id, double currentDist, Dataset dataset) {
         double minDist = currentDist;
-        int nearestCentroidIndex = dataset.partitions[id];
+        int nearestCentroidIndex = dataset.labels.get(id);
         for (int centroid = 0; centroid < dataset.centroids.length; centroid++) {
-            double dist = Dataset.distSq(dataset.data[id], dataset.centroids[centroid]);
+            double dist = dataset.storage.distSq(id, dataset.centroids[centroid]);
             if (dist < minDist) {
                 minDist = dist;
                 nearestCentroidIndex = centroid;
             }
         }
-        dataset.partitions[id] = nearestCentroidIndex;
-        prevDistances[id] = minDist;
+        dataset.assign(id, nearestCentroidIndex, minDist);
     }
 
     /**
@@ -0,0 +1,120 @@
+/**
+ * Data matrix stored as 32-bit floats in a single row-major array. Halves the memory use of
+ * {@link DoubleStorage}; the values are rounded to the nearest float. Distances and sums are
+ * calculated in double precision.
+ */
+public class FloatStorage implements DataStorage {
+
+    /**
+     * data vectors, row after row
+     */
+    private final float[] values;
+    private final int size;
+    private final int dimensions;
+
+    /**
+     * Converts data to float storage
+     *
+     * @param source data to be stored
+     * @throws IllegalArgumentException if the data does not fit in a single array
+     */
+    public FloatStorage(DataStorage source) throws IllegalArgumentException {
+        this(source.size(), source.dimensions());
+        for (int i = 0; i < size; i++) {
+            for (int d = 0; d < dimensions; d++)
+                values[i * dimensions + d] = (float) source.get(i, d);
+        }
+    }
+
+    private FloatStorage(int size, int dimensions) throws IllegalArgumentException {
+        if ((long) size * dimensions > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("FloatStorage(): Data matrix is too large for a single array");
+        this.size = size;
+        this.dimensions = dimensions;
+        this.values = new float[size * dimensions];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public StoragePrecision precision() {
+        return StoragePrecision.FLOAT;
+    }
+
+    @Override
+    public double get(int row, int dimension) {
+        return values[row * dimensions + dimension];
+    }
+
+    @Override
+    public double[] getRow(int row) {
+        double[] result = new double[dimensions];
+        int offset = row * dimensions;
+        for (int d = 0; d < dimensions; d++)
+            result[d] = values[offset + d];
+        return result;
+    }
+
+    @Override
+    public double distSq(int row, double[] point) {
+        int offset = row * dimensions;
+        double sum = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double diff = values[offset + d] - point[d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double distSq(int rowA, int rowB) {
+        int offsetA = rowA * dimensions;
+        int offsetB = rowB * dimensions;
+        double sum = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double diff = (double) values[offsetA + d] - values[offsetB + d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double addTo(int row, double[] sum) {
+        int offset = row * dimensions;
+        double norm = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double v = values[offset + d];
+            sum[d] += v;
+            norm += v * v;
+        }
+        return norm;
+    }
+
+    @Override
+    public double subtractFrom(int row, double[] sum) {
+        int offset = row * dimensions;
+        double norm = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double v = values[offset + d];
+            sum[d] -= v;
+            norm += v * v;
+        }
+        return norm;
+    }
+
+    @Override
+    public FloatStorage select(int[] rows) {
+        FloatStorage result = new FloatStorage(rows.length, dimensions);
+        for (int i = 0; i < rows.length; i++)
+            System.arraycopy(values, rows[i] * dimensions, result.values, i * dimensions, dimensions);
+        return result;
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Genetic algorithm with deterministic PNN crossover. A population of solutions is evolved
+ * by combining pairs of the best solutions: the centroids of both parents are taken together,
+ * the data is partitioned with them, and the 2K clusters are merged back to K with the
+ * pairwise nearest neighbor algorithm. Each offspring is fine-tuned with a few fast k-means
+ * iterations. The best solution always survives to the next generation.
+ *
+ * The members of the population are created and evaluated concurrently on a thread pool.
+ * All members share the read-only data matrix of the dataset; only the centroids and the
+ * partitioning are per member. Each task gets its own random number stream, split from the
+ * stream of the dataset before the tasks are started, so the result depends only on the seed
+ * and not on the number of threads.
+ *
+ * Based on P. Franti, "Genetic algorithm with deterministic crossover for vector
+ * quantization", Pattern Recognition Letters, 21 (1), 61-68, 2000.
+ */
+public class GeneticAlgorithm implements ClusteringAlgorithm {
+
+    /**
+     * default number of solutions in the population
+     */
+    public static final int DEFAULT_POPULATION_SIZE = 10;
+    /**
+     * default number of fast k-means iterations for each new solution
+     */
+    public static final int DEFAULT_FINE_TUNE_ITERATIONS = 2;
+    /**
+     * maximum number of generations when run until convergence
+     */
+    private static final int MAX_GENERATIONS = 1000;
+
+    private final int populationSize;
+    private final int fineTuneIterations;
+    /**
+     * number of worker threads
+     */
+    private final int threads;
+
+    /**
+     * number of generations of the last run
+     */
+    private int iterations;
+    /**
+     * called after each generation; null if none
+     */
+    private IterationListener listener;
+
+    /**
+     * Default population size and fine-tuning, one thread per available processor
+     */
+    public GeneticAlgorithm() {
+        this(DEFAULT_POPULATION_SIZE, DEFAULT_FINE_TUNE_ITERATIONS, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param populationSize     number of solutions in the population, at least 2
+     * @param fineTuneIterations number of fast k-means iterations for each new solution
+     * @param threads            number of worker threads, at least 1
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    public GeneticAlgorithm(int populationSize, int fineTuneIterations, int threads) throws IllegalArgumentException {
+        if (populationSize < 2)
+            throw new IllegalArgumentException("GeneticAlgorithm(): populationSize must be at least 2");
+        if (fineTuneIterations < 0)
+            throw new IllegalArgumentException("GeneticAlgorithm(): fineTuneIterations cannot be negative");
+        if (threads < 1)
+            throw new IllegalArgumentException("GeneticAlgorithm(): threads must be at least 1");
+        this.populationSize = populationSize;
+        this.fineTuneIterations = fineTuneIterations;
+        this.threads = threads;
+    }
+
+    /**
+     * Evolves the population until the best solution stops improving
+     */
+    @Override
+    public void cluster(Dataset dataset) {
+        cluster(dataset, StopCondition.NEVER);
+    }
+
+    /**
+     * Evolves the population for the given number of generations
+     *
+     * @param maxIterations number of generations
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations) {
+        cluster(dataset, maxIterations, StopCondition.NEVER);
+    }
+
+    /**
+     * Evolves the population until the best solution stops improving or until stopped
+     */
+    @Override
+    public void cluster(Dataset dataset, StopCondition stop) {
+        run(dataset, MAX_GENERATIONS, true, stop);
+    }
+
+    /**
+     * Evolves the population for the given number of generations or until stopped. The
+     * condition is checked between generations and fine-tuning iterations; the initial
+     * population is always created.
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations, StopCondition stop) {
+        run(dataset, maxIterations, false, stop);
+    }
+
+    private void run(Dataset dataset, int generations, boolean untilConvergence, StopCondition stop) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            // the first member starts from the current centroids, the rest from random vectors
+            List<Callable<Member>> tasks = new ArrayList<>();
+            for (int i = 0; i < populationSize; i++) {
+                boolean initialize = i > 0;
+                SplittableRandom random = dataset.random.split();
+                tasks.add(() -> {
+                    Dataset solution = dataset.copy(random);
+                    // the members share the data matrix; regrouping would give each its own copy
+                    solution.setRegroupInterval(0);
+                    if (initialize)
+                        solution.initializeRandomCentroids();
+                    return fineTune(solution, stop);
+                });
+            }
+            List<Member> population = Dataset.invokeAll(pool, tasks);
+            population.sort(Comparator.comparingDouble(m -> m.error));
+
+            iterations = 0;
+            for (int generation = 1; generation <= generations && !stop.isMet(); generation++) {
+                iterations = generation;
+                ClusteringEvents.Iteration event = ClusteringEvents.iteration();
+                Member best = population.get(0);
+                // pairs of the best solutions: (0, 1), (0, 2), (1, 2), (0, 3), ...
+                tasks = new ArrayList<>();
+                for (int b = 1; tasks.size() < populationSize - 1; b++) {
+                    for (int a = 0; a < b && tasks.size() < populationSize - 1; a++) {
+                        Member first = population.get(a);
+                        Member second = population.get(b);
+                        SplittableRandom random = dataset.random.split();
+                        tasks.add(() -> fineTune(crossover(first.solution, second.solution, random), stop));
+                    }
+                }
+                List<Member> offspring = Dataset.invokeAll(pool, tasks);
+                offspring.add(best);
+                offspring.sort(Comparator.comparingDouble(m -> m.error));
+                population = offspring;
+                // the members are partitioned concurrently, their work is not counted
+                event.end(this, dataset, generation, -1, population.get(0).error);
+                if (listener != null) {
+                    listener.iterationDone(new IterationEvent(this, generation, population.get(0).error,
+                            -1, -1, -1, -1, Double.NaN));
+                }
+                if (untilConvergence && !(population.get(0).error < best.error))
+                    break;
+            }
+
+            dataset.centroids = population.get(0).solution.getCentroids();
+            dataset.partition();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * PNN crossover: merges the clusters of the two parents into K clusters. The parents are
+     * not modified.
+     *
+     * @param random random number stream of the new solution
+     * @return new solution sharing the data matrix of the parents
+     */
+    private static Dataset crossover(Dataset first, Dataset second, SplittableRandom random) {
+        int k = first.getNumberOfClusters();
+        double[][] union = new double[2 * k][];
+        for (int c = 0; c < k; c++) {
+            union[c] = first.centroids[c].clone();
+            union[k + c] = second.centroids[c].clone();
+        }
+        double[][] merged = PNN.merge(first, union, k);
+        Dataset child = first.copy(random);
+        // with fewer distinct centroids than clusters the rest are kept from the first parent
+        System.arraycopy(merged, 0, child.centroids, 0, merged.length);
+        child.partition();
+        return child;
+    }
+
+    /**
+     * Fine-tunes a solution with fast k-means, until stopped
+     */
+    private Member fineTune(Dataset solution, StopCondition stop) {
+        if (fineTuneIterations > 0)
+            new FastKMeans().cluster(solution, fineTuneIterations, stop);
+        return new Member(solution, solution.TSE());
+    }
+
+    /**
+     * @return number of generations of the last run
+     */
+    @Override
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * The listener is called after each generation with the error of the best solution
+     */
+    @Override
+    public void setListener(IterationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Solution and its total squared error
+     */
+    private static final class Member {
+        final Dataset solution;
+        final double error;
+
+        Member(Dataset solution, double error) {
+            this.solution = solution;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Data matrix of integer values stored as 32-bit integers in a single row-major array.
+ *
+ * Squared norms and distances between data vectors are calculated exactly with 64-bit integer
+ * arithmetic when the value range guarantees that they cannot overflow; otherwise double
+ * arithmetic is used.
+ */
+public class IntStorage implements DataStorage {
+
+    /**
+     * data vectors, row after row
+     */
+    private final int[] values;
+    private final int size;
+    private final int dimensions;
+    /**
+     * squared norms fit in a long
+     */
+    private final boolean exactNorms;
+    /**
+     * squared distances between data vectors fit in a long
+     */
+    private final boolean exactDistances;
+
+    /**
+     * Converts data to integer storage
+     *
+     * @param source data to be stored
+     * @throws IllegalArgumentException if the data contains non-integer values or values outside
+     *                                  the int range, or does not fit in a single array
+     */
+    public IntStorage(DataStorage source) throws IllegalArgumentException {
+        if ((long) source.size() * source.dimensions() > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("IntStorage(): Data matrix is too large for a single array");
+        size = source.size();
+        dimensions = source.dimensions();
+        values = new int[size * dimensions];
+        long min = 0;
+        long max = 0;
+        for (int i = 0; i < size; i++) {
+            for (int d = 0; d < dimensions; d++) {
+                double value = source.get(i, d);
+                if (value != Math.rint(value) || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+                    throw new IllegalArgumentException("IntStorage(): Data contains values that are not 32-bit integers");
+                values[i * dimensions + d] = (int) value;
+                min = Math.min(min, (long) value);
+                max = Math.max(max, (long) value);
+            }
+        }
+        double maxAbs = Math.max(-min, max);
+        double range = max - min;
+        exactNorms = dimensions * maxAbs * maxAbs < Long.MAX_VALUE / 2;
+        exactDistances = dimensions * range * range < Long.MAX_VALUE / 2;
+    }
+
+    private IntStorage(IntStorage source, int[] rows) {
+        size = rows.length;
+        dimensions = source.dimensions;
+        exactNorms = source.exactNorms;
+        exactDistances = source.exactDistances;
+        values = new int[size * dimensions];
+        for (int i = 0; i < rows.length; i++)
+            System.arraycopy(source.values, rows[i] * dimensions, values, i * dimensions, dimensions);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public StoragePrecision precision() {
+        return StoragePrecision.INT32;
+    }
+
+    @Override
+    public double get(int row, int dimension) {
+        return values[row * dimensions + dimension];
+    }
+
+    @Override
+    public double[] getRow(int row) {
+        double[] result = new double[dimensions];
+        int offset = row * dimensions;
+        for (int d = 0; d < dimensions; d++)
+            result[d] = values[offset + d];
+        return result;
+    }
+
+    @Override
+    public double distSq(int row, double[] point) {
+        int offset = row * dimensions;
+        double sum = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double diff = values[offset + d] - point[d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double distSq(int rowA, int rowB) {
+        int offsetA = rowA * dimensions;
+        int offsetB = rowB * dimensions;
+        if (exactDistances) {
+            long sum = 0;
+            for (int d = 0; d < dimensions; d++) {
+                long diff = (long) values[offsetA + d] - values[offsetB + d];
+                sum += diff * diff;
+            }
+            return sum;
+        }
+        double sum = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double diff = (double) values[offsetA + d] - values[offsetB + d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double addTo(int row, double[] sum) {
+        int offset = row * dimensions;
+        for (int d = 0; d < dimensions; d++)
+            sum[d] += values[offset + d];
+        return squaredNorm(offset);
+    }
+
+    @Override
+    public double subtractFrom(int row, double[] sum) {
+        int offset = row * dimensions;
+        for (int d = 0; d < dimensions; d++)
+            sum[d] -= values[offset + d];
+        return squaredNorm(offset);
+    }
+
+    /**
+     * @param offset start of the vector in {@link #values}
+     * @return squared norm of the vector
+     */
+    private double squaredNorm(int offset) {
+        if (exactNorms) {
+            long norm = 0;
+            for (int d = 0; d < dimensions; d++)
+                norm += (long) values[offset + d] * values[offset + d];
+            return norm;
+        }
+        double norm = 0;
+        for (int d = 0; d < dimensions; d++)
+            norm += (double) values[offset + d] * values[offset + d];
+        return norm;
+    }
+
+    @Override
+    public IntStorage select(int[] rows) {
+        return new IntStorage(this, rows);
+    }
+}
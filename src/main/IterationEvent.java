@@ -0,0 +1,74 @@
+/**
+ * What one iteration of a clustering algorithm did. Values an algorithm does not track are
+ * -1, or NaN for the temperature.
+ *
+ * The counters are collected only while a listener is attached; without one, the algorithms
+ * skip the counting altogether.
+ */
+public final class IterationEvent {
+
+    /**
+     * algorithm that did the iteration
+     */
+    public final ClusteringAlgorithm algorithm;
+    /**
+     * iteration number, starting from 1; a trial for random swap, a generation for the
+     * genetic algorithm
+     */
+    public final int iteration;
+    /**
+     * total squared error after the iteration; of the best solution for random swap and the
+     * genetic algorithm, of the partitioning before the perturbations for stochastic relaxation
+     */
+    public final double TSE;
+    /**
+     * number of data vectors whose cluster changed during the iteration
+     */
+    public final long changedLabels;
+    /**
+     * number of vector-to-centroid distances calculated during the iteration
+     */
+    public final long distanceComputations;
+    /**
+     * number of centroids that moved in the iteration (fast k-means)
+     */
+    public final int activeCentroids;
+    /**
+     * number of swaps accepted so far (random swap)
+     */
+    public final int acceptedSwaps;
+    /**
+     * temperature of the perturbations (stochastic relaxation)
+     */
+    public final double temperature;
+
+    IterationEvent(ClusteringAlgorithm algorithm, int iteration, double TSE, long changedLabels,
+                   long distanceComputations, int activeCentroids, int acceptedSwaps, double temperature) {
+        this.algorithm = algorithm;
+        this.iteration = iteration;
+        this.TSE = TSE;
+        this.changedLabels = changedLabels;
+        this.distanceComputations = distanceComputations;
+        this.activeCentroids = activeCentroids;
+        this.acceptedSwaps = acceptedSwaps;
+        this.temperature = temperature;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(algorithm.getClass().getSimpleName()).append(' ').append(iteration)
+                .append(": TSE ").append(TSE);
+        if (changedLabels >= 0)
+            sb.append(", changed labels ").append(changedLabels);
+        if (distanceComputations >= 0)
+            sb.append(", distances ").append(distanceComputations);
+        if (activeCentroids >= 0)
+            sb.append(", active centroids ").append(activeCentroids);
+        if (acceptedSwaps >= 0)
+            sb.append(", accepted swaps ").append(acceptedSwaps);
+        if (!Double.isNaN(temperature))
+            sb.append(", temperature ").append(temperature);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * Receives an event after each iteration of a clustering algorithm, see
+ * {@link ClusteringAlgorithm#setListener(IterationListener)}. Called in the thread that runs
+ * the algorithm.
+ */
+public interface IterationListener {
+
+    /**
+     * Called after each iteration
+     *
+     * @param event what the iteration did
+     */
+    void iterationDone(IterationEvent event);
+}
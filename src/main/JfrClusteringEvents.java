@@ -0,0 +1,174 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Implementation of {@link ClusteringEvents} with JDK Flight Recorder events. Loaded by
+ * ClusteringEvents only if the runtime has the jdk.jfr module; no other class refers to it.
+ */
+final class JfrClusteringEvents extends ClusteringEvents {
+
+    @Override
+    ClusteringEvents.Partition beginPartition() {
+        Partition event = new Partition();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    ClusteringEvents.UpdateCentroids beginUpdateCentroids() {
+        UpdateCentroids event = new UpdateCentroids();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    ClusteringEvents.Iteration beginIteration() {
+        Iteration event = new Iteration();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    ClusteringEvents.Repeat beginRepeat() {
+        Repeat event = new Repeat();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    boolean iterationRecorded() {
+        return new Iteration().isEnabled();
+    }
+
+    /**
+     * Assignment of all data vectors to their nearest centroids
+     */
+    @Name("clustering.Partition")
+    @Label("Partition")
+    @Category("Clustering")
+    @Description("Assignment of the data vectors to their nearest centroids")
+    static final class Partition extends Event implements ClusteringEvents.Partition {
+        @Label("Vectors")
+        int vectors;
+        @Label("Clusters")
+        int clusters;
+        @Label("Dimensions")
+        int dimensions;
+        @Label("Distance Computations")
+        long distanceComputations;
+
+        @Override
+        public void end(Dataset dataset, long distanceComputations) {
+            if (shouldCommit()) {
+                vectors = dataset.storage.size();
+                clusters = dataset.centroids.length;
+                dimensions = dataset.storage.dimensions();
+                this.distanceComputations = distanceComputations;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Move of the centroids to the means of their clusters
+     */
+    @Name("clustering.UpdateCentroids")
+    @Label("Update Centroids")
+    @Category("Clustering")
+    @Description("Move of the centroids to the means of their clusters")
+    static final class UpdateCentroids extends Event implements ClusteringEvents.UpdateCentroids {
+        @Label("Clusters")
+        int clusters;
+        @Label("Dimensions")
+        int dimensions;
+
+        @Override
+        public void end(Dataset dataset) {
+            if (shouldCommit()) {
+                clusters = dataset.centroids.length;
+                dimensions = dataset.storage.dimensions();
+                commit();
+            }
+        }
+    }
+
+    /**
+     * One iteration of an algorithm: a k-means iteration, a random swap trial, a generation
+     */
+    @Name("clustering.Iteration")
+    @Label("Iteration")
+    @Category("Clustering")
+    @Description("One iteration of a clustering algorithm")
+    static final class Iteration extends Event implements ClusteringEvents.Iteration {
+        @Label("Algorithm")
+        String algorithm;
+        @Label("Iteration")
+        int iteration;
+        @Label("Vectors")
+        int vectors;
+        @Label("Clusters")
+        int clusters;
+        @Label("Dimensions")
+        int dimensions;
+        @Label("Distance Computations")
+        @Description("Distances calculated in the iteration; -1 if not counted")
+        long distanceComputations;
+        @Label("Total Squared Error")
+        double TSE;
+
+        @Override
+        public void end(ClusteringAlgorithm algorithm, Dataset dataset, int iteration, long distanceComputations, double TSE) {
+            if (shouldCommit()) {
+                this.algorithm = algorithm.getClass().getSimpleName();
+                this.iteration = iteration;
+                vectors = dataset.storage.size();
+                clusters = dataset.centroids.length;
+                dimensions = dataset.storage.dimensions();
+                this.distanceComputations = distanceComputations;
+                this.TSE = TSE;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * One repeat of {@link Clustering#runMultiple(int, StopCondition)}
+     */
+    @Name("clustering.Repeat")
+    @Label("Repeat")
+    @Category("Clustering")
+    @Description("One repeat of the clustering algorithm from new random centroids")
+    static final class Repeat extends Event implements ClusteringEvents.Repeat {
+        @Label("Algorithm")
+        String algorithm;
+        @Label("Repeat")
+        int repeat;
+        @Label("Vectors")
+        int vectors;
+        @Label("Clusters")
+        int clusters;
+        @Label("Dimensions")
+        int dimensions;
+        @Label("Iterations")
+        int iterations;
+        @Label("Mean Squared Error")
+        double MSE;
+
+        @Override
+        public void end(ClusteringAlgorithm algorithm, Dataset dataset, int repeat, double MSE) {
+            if (shouldCommit()) {
+                this.algorithm = algorithm.getClass().getSimpleName();
+                this.repeat = repeat;
+                vectors = dataset.storage.size();
+                clusters = dataset.centroids.length;
+                dimensions = dataset.storage.dimensions();
+                iterations = algorithm.getIterations();
+                this.MSE = MSE;
+                commit();
+            }
+        }
+    }
+}
@@ -7,6 +7,15 @@ import java.util.Arrays;
  */
 public class KMeans implements ClusteringAlgorithm {
 
+    /**
+     * number of iterations done by the last run
+     */
+    private int iterations;
+    /**
+     * called after each iteration; null if none
+     */
+    private IterationListener listener;
+
     /**
      * Iterates k-means until convergence
      */
@@ -17,18 +26,67 @@ public class KMeans implements ClusteringAlgorithm {
     /**
      * Iterates k-means for set amount of maximum iterations
      */
-    public void cluster(Dataset dataset, int iterations) {
-        for (int iteration = 1; iteration <= iterations; iteration++) {
-            double[][] prevCentroids = Arrays.copyOf(dataset.centroids, dataset.centroids.length);
-            dataset.partition();
-            dataset.updateCentroids();
-
-            if (!centroidsChanged(prevCentroids, dataset)) {
-                break;
+    public void cluster(Dataset dataset, int maxIterations) {
+        cluster(dataset, maxIterations, StopCondition.NEVER);
+    }
+
+    /**
+     * Iterates k-means until convergence or until stopped
+     */
+    @Override
+    public void cluster(Dataset dataset, StopCondition stop) {
+        cluster(dataset, Integer.MAX_VALUE, stop);
+    }
+
+    /**
+     * Iterates k-means for set amount of maximum iterations or until stopped. Every iteration
+     * lowers the error, so the last one is the best.
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations, StopCondition stop) {
+        OperationCounters previousCounters = dataset.counters;
+        OperationCounters counters = listener != null || ClusteringEvents.isIterationRecorded()
+                ? new OperationCounters() : null;
+        dataset.counters = counters;
+        try {
+            iterations = 0;
+            for (int iteration = 1; iteration <= maxIterations && !stop.isMet(); iteration++) {
+                iterations = iteration;
+                ClusteringEvents.Iteration event = ClusteringEvents.iteration();
+                double[][] prevCentroids = Arrays.copyOf(dataset.centroids, dataset.centroids.length);
+                dataset.partition();
+                dataset.updateCentroids();
+                if (counters != null) {
+                    double TSE = dataset.TSE();
+                    long changedLabels = counters.takeChangedLabels();
+                    long distanceComputations = counters.takeDistanceComputations();
+                    event.end(this, dataset, iteration, distanceComputations, TSE);
+                    if (listener != null) {
+                        listener.iterationDone(new IterationEvent(this, iteration, TSE,
+                                changedLabels, distanceComputations, -1, -1, Double.NaN));
+                    }
+                }
+
+                if (!centroidsChanged(prevCentroids, dataset)) {
+                    break;
+                }
+                dataset.regroupIfDue();
             }
+        } finally {
+            dataset.counters = previousCounters;
         }
     }
 
+    @Override
+    public void setListener(IterationListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public int getIterations() {
+        return iterations;
+    }
+
     /**
      * Checks if the centroids changed from previous centroids.
      */
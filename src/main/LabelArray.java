@@ -0,0 +1,233 @@
+/**
+ * Cluster labels of the data vectors. Besides plain int labels, the labels can be stored as
+ * unsigned bytes or shorts when the number of clusters allows, which cuts the per-vector
+ * memory of the partitioning to a quarter or a half on large datasets.
+ */
+abstract class LabelArray {
+
+    /**
+     * Allocates a label array
+     *
+     * @param size             number of data vectors
+     * @param numberOfClusters number of clusters, determines the compact label type
+     * @param compact          use the smallest label type that fits the number of clusters
+     * @return label array with all labels 0
+     */
+    static LabelArray allocate(int size, int numberOfClusters, boolean compact) {
+        switch (bytesPerLabel(numberOfClusters, compact)) {
+            case 1:
+                return new ByteLabels(new byte[size]);
+            case 2:
+                return new ShortLabels(new short[size]);
+            default:
+                return new IntLabels(new int[size]);
+        }
+    }
+
+    /**
+     * @return number of bytes used for each label with the given settings
+     */
+    static int bytesPerLabel(int numberOfClusters, boolean compact) {
+        if (!compact || numberOfClusters > 1 << 16)
+            return 4;
+        return numberOfClusters > 1 << 8 ? 2 : 1;
+    }
+
+    /**
+     * @return true if the array can be reused with the given settings
+     */
+    boolean suits(int size, int numberOfClusters, boolean compact) {
+        return size() == size && bytesPerLabel() == bytesPerLabel(numberOfClusters, compact);
+    }
+
+    /**
+     * @return number of labels
+     */
+    abstract int size();
+
+    /**
+     * @return number of bytes used for each label
+     */
+    abstract int bytesPerLabel();
+
+    /**
+     * @param i index of the data vector
+     * @return cluster label of the vector
+     */
+    abstract int get(int i);
+
+    /**
+     * @param i     index of the data vector
+     * @param label cluster label of the vector
+     */
+    abstract void set(int i, int label);
+
+    /**
+     * @return independent copy of the labels
+     */
+    abstract LabelArray copy();
+
+    /**
+     * @param rows indices of the labels to copy, in the new order
+     * @return new array containing the given labels
+     */
+    abstract LabelArray select(int[] rows);
+
+    /**
+     * @return copy of the labels as an int array
+     */
+    abstract int[] toArray();
+
+    /**
+     * 32-bit labels. The array is exposed so that {@link Dataset#partitions} can refer to it.
+     */
+    static final class IntLabels extends LabelArray {
+        final int[] labels;
+
+        IntLabels(int[] labels) {
+            this.labels = labels;
+        }
+
+        @Override
+        int size() {
+            return labels.length;
+        }
+
+        @Override
+        int bytesPerLabel() {
+            return 4;
+        }
+
+        @Override
+        int get(int i) {
+            return labels[i];
+        }
+
+        @Override
+        void set(int i, int label) {
+            labels[i] = label;
+        }
+
+        @Override
+        LabelArray copy() {
+            return new IntLabels(labels.clone());
+        }
+
+        @Override
+        LabelArray select(int[] rows) {
+            int[] result = new int[rows.length];
+            for (int i = 0; i < rows.length; i++)
+                result[i] = labels[rows[i]];
+            return new IntLabels(result);
+        }
+
+        @Override
+        int[] toArray() {
+            return labels.clone();
+        }
+    }
+
+    /**
+     * Unsigned 16-bit labels, up to 65536 clusters
+     */
+    private static final class ShortLabels extends LabelArray {
+        private final short[] labels;
+
+        ShortLabels(short[] labels) {
+            this.labels = labels;
+        }
+
+        @Override
+        int size() {
+            return labels.length;
+        }
+
+        @Override
+        int bytesPerLabel() {
+            return 2;
+        }
+
+        @Override
+        int get(int i) {
+            return labels[i] & 0xFFFF;
+        }
+
+        @Override
+        void set(int i, int label) {
+            labels[i] = (short) label;
+        }
+
+        @Override
+        LabelArray copy() {
+            return new ShortLabels(labels.clone());
+        }
+
+        @Override
+        LabelArray select(int[] rows) {
+            short[] result = new short[rows.length];
+            for (int i = 0; i < rows.length; i++)
+                result[i] = labels[rows[i]];
+            return new ShortLabels(result);
+        }
+
+        @Override
+        int[] toArray() {
+            int[] result = new int[labels.length];
+            for (int i = 0; i < labels.length; i++)
+                result[i] = labels[i] & 0xFFFF;
+            return result;
+        }
+    }
+
+    /**
+     * Unsigned 8-bit labels, up to 256 clusters
+     */
+    private static final class ByteLabels extends LabelArray {
+        private final byte[] labels;
+
+        ByteLabels(byte[] labels) {
+            this.labels = labels;
+        }
+
+        @Override
+        int size() {
+            return labels.length;
+        }
+
+        @Override
+        int bytesPerLabel() {
+            return 1;
+        }
+
+        @Override
+        int get(int i) {
+            return labels[i] & 0xFF;
+        }
+
+        @Override
+        void set(int i, int label) {
+            labels[i] = (byte) label;
+        }
+
+        @Override
+        LabelArray copy() {
+            return new ByteLabels(labels.clone());
+        }
+
+        @Override
+        LabelArray select(int[] rows) {
+            byte[] result = new byte[rows.length];
+            for (int i = 0; i < rows.length; i++)
+                result[i] = labels[rows[i]];
+            return new ByteLabels(result);
+        }
+
+        @Override
+        int[] toArray() {
+            int[] result = new int[labels.length];
+            for (int i = 0; i < labels.length; i++)
+                result[i] = labels[i] & 0xFF;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+import java.util.Arrays;
+
+/**
+ * Multi-resolution clustering: clusters a small random sample of the data first, then
+ * progressively larger samples starting from the centroids of the previous sample, and finally
+ * the full data with fast k-means. Most of the work is done on the small samples, and each
+ * larger level only needs a few iterations to move the centroids to their final places.
+ *
+ * The given algorithm is run on the smallest sample; the larger samples and the full data are
+ * clustered with fast k-means. The samples are drawn independently from the full data.
+ */
+public class MultiResolutionClustering implements ClusteringAlgorithm {
+
+    /**
+     * default ratio of the sizes of consecutive samples
+     */
+    public static final int DEFAULT_GROWTH_FACTOR = 4;
+
+    /**
+     * algorithm run on the smallest sample
+     */
+    private final ClusteringAlgorithm sampleAlgorithm;
+    /**
+     * number of vectors in the smallest sample
+     */
+    private final int initialSize;
+    /**
+     * ratio of the sizes of consecutive samples
+     */
+    private final int growthFactor;
+
+    /**
+     * number of vectors on each level of the last run, the full data last
+     */
+    private int[] levelSizes = new int[0];
+    /**
+     * number of iterations on each level of the last run
+     */
+    private int[] levelIterations = new int[0];
+    /**
+     * listener of the algorithms on all levels; null if none
+     */
+    private IterationListener listener;
+
+    /**
+     * @param sampleAlgorithm algorithm run on the smallest sample
+     * @param initialSize     number of vectors in the smallest sample
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public MultiResolutionClustering(ClusteringAlgorithm sampleAlgorithm, int initialSize)
+            throws IllegalArgumentException {
+        this(sampleAlgorithm, initialSize, DEFAULT_GROWTH_FACTOR);
+    }
+
+    /**
+     * @param sampleAlgorithm algorithm run on the smallest sample
+     * @param initialSize     number of vectors in the smallest sample
+     * @param growthFactor    ratio of the sizes of consecutive samples, at least 2
+     * @throws IllegalArgumentException if the size is not positive or the factor is less than 2
+     */
+    public MultiResolutionClustering(ClusteringAlgorithm sampleAlgorithm, int initialSize, int growthFactor)
+            throws IllegalArgumentException {
+        if (initialSize <= 0)
+            throw new IllegalArgumentException("MultiResolutionClustering(): initialSize must be positive");
+        if (growthFactor < 2)
+            throw new IllegalArgumentException("MultiResolutionClustering(): growthFactor must be at least 2");
+        this.sampleAlgorithm = sampleAlgorithm;
+        this.initialSize = initialSize;
+        this.growthFactor = growthFactor;
+    }
+
+    /**
+     * Runs each level until convergence
+     */
+    @Override
+    public void cluster(Dataset dataset) {
+        run(dataset, 0, StopCondition.NEVER);
+    }
+
+    /**
+     * Runs each level with maximum number of iterations
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations) {
+        run(dataset, maxIterations, StopCondition.NEVER);
+    }
+
+    /**
+     * Runs each level until convergence, until stopped. When stopped, the remaining sample
+     * levels are skipped and the full data is partitioned with the centroids found so far.
+     */
+    @Override
+    public void cluster(Dataset dataset, StopCondition stop) {
+        run(dataset, 0, stop);
+    }
+
+    /**
+     * Runs each level with maximum number of iterations, until stopped
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations, StopCondition stop) {
+        run(dataset, maxIterations, stop);
+    }
+
+    /**
+     * @param maxIterations maximum number of iterations on each level; 0 to run the algorithms
+     *                      with their own defaults
+     * @param stop          passed to the algorithm of each level
+     */
+    private void run(Dataset dataset, int maxIterations, StopCondition stop) {
+        int[] sizes = levelSizes(dataset.getNumberOfVectors(), dataset.getNumberOfClusters());
+        int[] iterations = new int[sizes.length];
+        FastKMeans fastKMeans = new FastKMeans();
+        fastKMeans.setListener(listener);
+        double[][] centroids = null;
+        for (int level = 0; level < sizes.length - 1 && !stop.isMet(); level++) {
+            // each level starts from the centroids of the previous one
+            Dataset sample = centroids == null ? dataset.sample(sizes[level]) : dataset.sample(sizes[level], centroids);
+            ClusteringAlgorithm algorithm = level == 0 ? sampleAlgorithm : fastKMeans;
+            if (maxIterations > 0)
+                algorithm.cluster(sample, maxIterations, stop);
+            else
+                algorithm.cluster(sample, stop);
+            iterations[level] = algorithm.getIterations();
+            centroids = sample.centroids;
+        }
+        if (centroids != null) {
+            dataset.centroids = centroids;
+            if (stop.isMet())
+                dataset.partition();
+        }
+        if (maxIterations > 0)
+            fastKMeans.cluster(dataset, maxIterations, stop);
+        else
+            fastKMeans.cluster(dataset, stop);
+        iterations[sizes.length - 1] = fastKMeans.getIterations();
+        levelSizes = sizes;
+        levelIterations = iterations;
+    }
+
+    /**
+     * Sample sizes grow geometrically from the initial size; a sample that would contain
+     * the whole data is replaced by the full data level.
+     *
+     * @param n number of data vectors
+     * @param k number of clusters
+     * @return number of vectors on each level, the full data last
+     */
+    int[] levelSizes(int n, int k) {
+        int[] sizes = new int[0];
+        for (long size = Math.max(initialSize, k); size < n; size *= growthFactor) {
+            sizes = Arrays.copyOf(sizes, sizes.length + 1);
+            sizes[sizes.length - 1] = (int) size;
+        }
+        sizes = Arrays.copyOf(sizes, sizes.length + 1);
+        sizes[sizes.length - 1] = n;
+        return sizes;
+    }
+
+    /**
+     * @return number of vectors on each level of the last run, the full data last
+     */
+    public int[] getLevelSizes() {
+        return levelSizes.clone();
+    }
+
+    /**
+     * @return number of iterations on each level of the last run, the full data last
+     */
+    public int[] getLevelIterations() {
+        return levelIterations.clone();
+    }
+
+    /**
+     * Attaches the listener to the algorithm of the smallest sample and to the fast k-means of
+     * the other levels
+     */
+    @Override
+    public void setListener(IterationListener listener) {
+        this.listener = listener;
+        sampleAlgorithm.setListener(listener);
+    }
+
+    /**
+     * @return total number of iterations on all levels in the last run
+     */
+    @Override
+    public int getIterations() {
+        int total = 0;
+        for (int iterations : levelIterations)
+            total += iterations;
+        return total;
+    }
+}
@@ -0,0 +1,296 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Data matrix of doubles stored outside the Java heap, either in direct buffers or in a
+ * memory-mapped file. The garbage collector does not have to scan or copy the matrix, so the
+ * heap can be sized for the clustering state only. A mapped file is paged in by the operating
+ * system on demand and can be shared by several processes.
+ *
+ * A single buffer can hold at most 2 GB, so the matrix is split into chunks of whole rows.
+ * The distance and accumulation kernels read the buffers directly without copying the rows.
+ *
+ * Binary file format, little-endian: number of vectors (int), number of dimensions (int),
+ * followed by the components of the vectors as doubles, row after row.
+ */
+public class OffHeapStorage implements DataStorage {
+
+    /**
+     * size of the binary file header in bytes
+     */
+    static final int HEADER_BYTES = 8;
+
+    /**
+     * largest number of doubles in a single buffer
+     */
+    private static final int MAX_CHUNK_DOUBLES = Integer.MAX_VALUE / Double.BYTES;
+
+    /**
+     * data vectors, {@link #rowsPerChunk} rows in each buffer
+     */
+    private final DoubleBuffer[] chunks;
+    private final int size;
+    private final int dimensions;
+    private final int rowsPerChunk;
+
+    /**
+     * Copies data to direct buffers
+     *
+     * @param source data to be stored
+     */
+    public OffHeapStorage(DataStorage source) {
+        this(source, defaultRowsPerChunk(source.dimensions()));
+    }
+
+    /**
+     * Copies data to direct buffers of the given size
+     *
+     * @param source       data to be stored
+     * @param rowsPerChunk number of vectors in each buffer
+     */
+    OffHeapStorage(DataStorage source, int rowsPerChunk) {
+        this(source.size(), source.dimensions(), rowsPerChunk);
+        allocateDirect();
+        for (int i = 0; i < size; i++) {
+            DoubleBuffer chunk = chunks[i / rowsPerChunk];
+            int offset = (i % rowsPerChunk) * dimensions;
+            for (int d = 0; d < dimensions; d++)
+                chunk.put(offset + d, source.get(i, d));
+        }
+    }
+
+    /**
+     * Copies the given rows of another storage to direct buffers
+     *
+     * @param buffers buffers to copy the rows to, of the shape of this storage; null to allocate
+     *                new ones
+     */
+    private OffHeapStorage(OffHeapStorage source, int[] rows, DoubleBuffer[] buffers) {
+        this(rows.length, source.dimensions, defaultRowsPerChunk(source.dimensions));
+        if (buffers != null)
+            System.arraycopy(buffers, 0, chunks, 0, chunks.length);
+        else
+            allocateDirect();
+        for (int i = 0; i < size; i++) {
+            DoubleBuffer chunk = chunks[i / rowsPerChunk];
+            int offset = (i % rowsPerChunk) * dimensions;
+            DoubleBuffer sourceChunk = source.chunks[rows[i] / source.rowsPerChunk];
+            int sourceOffset = (rows[i] % source.rowsPerChunk) * dimensions;
+            for (int d = 0; d < dimensions; d++)
+                chunk.put(offset + d, sourceChunk.get(sourceOffset + d));
+        }
+    }
+
+    private OffHeapStorage(int size, int dimensions, int rowsPerChunk) {
+        this.size = size;
+        this.dimensions = dimensions;
+        this.rowsPerChunk = rowsPerChunk;
+        this.chunks = new DoubleBuffer[size == 0 ? 0 : (size - 1) / rowsPerChunk + 1];
+    }
+
+    /**
+     * Maps a binary data file to memory. The file is only read, never modified.
+     *
+     * @param file binary data file, see the class description for the format
+     * @return storage backed by the file
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid binary data file
+     */
+    public static OffHeapStorage map(File file) throws IOException, IllegalArgumentException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            if (channel.size() < HEADER_BYTES)
+                throw new IllegalArgumentException("map(): File is too short for a binary data file");
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            int size = header.getInt(0);
+            int dimensions = header.getInt(4);
+            if (size < 0 || dimensions <= 0
+                    || channel.size() != HEADER_BYTES + (long) size * dimensions * Double.BYTES)
+                throw new IllegalArgumentException("map(): File size does not match the header");
+
+            OffHeapStorage storage = new OffHeapStorage(size, dimensions, defaultRowsPerChunk(dimensions));
+            long position = HEADER_BYTES;
+            for (int c = 0; c < storage.chunks.length; c++) {
+                long bytes = (long) storage.rowsInChunk(c) * dimensions * Double.BYTES;
+                // the mapping stays valid after the channel is closed
+                storage.chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                position += bytes;
+            }
+            return storage;
+        }
+    }
+
+    /**
+     * Writes data to a binary data file that can be mapped with {@link #map(File)}
+     *
+     * @param data data to be written
+     * @param rows rows to write, in this order; null to write all rows in storage order
+     * @param file destination file, overwritten
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(DataStorage data, int[] rows, File file) throws IOException {
+        int size = rows == null ? data.size() : rows.length;
+        // DataOutputStream is big-endian
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(Integer.reverseBytes(size));
+            out.writeInt(Integer.reverseBytes(data.dimensions()));
+            for (int i = 0; i < size; i++) {
+                int row = rows == null ? i : rows[i];
+                for (int d = 0; d < data.dimensions(); d++)
+                    out.writeLong(Long.reverseBytes(Double.doubleToLongBits(data.get(row, d))));
+            }
+        }
+    }
+
+    /**
+     * @return largest number of vectors that fit in a single buffer
+     */
+    private static int defaultRowsPerChunk(int dimensions) {
+        return Math.max(1, MAX_CHUNK_DOUBLES / Math.max(1, dimensions));
+    }
+
+    /**
+     * Allocates a direct buffer for each chunk
+     */
+    private void allocateDirect() {
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c] = ByteBuffer.allocateDirect(rowsInChunk(c) * dimensions * Double.BYTES)
+                    .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        }
+    }
+
+    /**
+     * @return number of rows in the given chunk
+     */
+    private int rowsInChunk(int chunk) {
+        return Math.min(rowsPerChunk, size - chunk * rowsPerChunk);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public StoragePrecision precision() {
+        return StoragePrecision.DOUBLE;
+    }
+
+    @Override
+    public double get(int row, int dimension) {
+        return chunks[row / rowsPerChunk].get((row % rowsPerChunk) * dimensions + dimension);
+    }
+
+    @Override
+    public double[] getRow(int row) {
+        DoubleBuffer chunk = chunks[row / rowsPerChunk];
+        int offset = (row % rowsPerChunk) * dimensions;
+        double[] result = new double[dimensions];
+        for (int d = 0; d < dimensions; d++)
+            result[d] = chunk.get(offset + d);
+        return result;
+    }
+
+    @Override
+    public DoubleBuffer rowView(int row) {
+        DoubleBuffer view = chunks[row / rowsPerChunk].duplicate();
+        int offset = (row % rowsPerChunk) * dimensions;
+        view.limit(offset + dimensions);
+        view.position(offset);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public double distSq(int row, double[] point) {
+        DoubleBuffer chunk = chunks[row / rowsPerChunk];
+        int offset = (row % rowsPerChunk) * dimensions;
+        double sum = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double diff = chunk.get(offset + d) - point[d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double distSq(int rowA, int rowB) {
+        DoubleBuffer chunkA = chunks[rowA / rowsPerChunk];
+        DoubleBuffer chunkB = chunks[rowB / rowsPerChunk];
+        int offsetA = (rowA % rowsPerChunk) * dimensions;
+        int offsetB = (rowB % rowsPerChunk) * dimensions;
+        double sum = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double diff = chunkA.get(offsetA + d) - chunkB.get(offsetB + d);
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double addTo(int row, double[] sum) {
+        DoubleBuffer chunk = chunks[row / rowsPerChunk];
+        int offset = (row % rowsPerChunk) * dimensions;
+        double norm = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double v = chunk.get(offset + d);
+            sum[d] += v;
+            norm += v * v;
+        }
+        return norm;
+    }
+
+    @Override
+    public double subtractFrom(int row, double[] sum) {
+        DoubleBuffer chunk = chunks[row / rowsPerChunk];
+        int offset = (row % rowsPerChunk) * dimensions;
+        double norm = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double v = chunk.get(offset + d);
+            sum[d] -= v;
+            norm += v * v;
+        }
+        return norm;
+    }
+
+    /**
+     * The selected vectors are copied to new direct buffers, also when this storage is backed by
+     * a mapped file.
+     */
+    @Override
+    public OffHeapStorage select(int[] rows) {
+        return new OffHeapStorage(this, rows, null);
+    }
+
+    /**
+     * Copies the selected vectors like {@link #select(int[])}, but into the direct buffers of a
+     * storage that is no longer used, so that repeated reordering does not allocate new direct
+     * memory each time. Direct memory is only released when the garbage collector happens to
+     * collect the buffer objects.
+     *
+     * @param rows  indices of the data vectors
+     * @param spare storage whose buffers are overwritten; must not be used afterwards. New
+     *              buffers are allocated if it is null, backed by a file or of a different shape.
+     * @return new storage
+     */
+    OffHeapStorage select(int[] rows, OffHeapStorage spare) {
+        boolean reusable = spare != null && spare != this && spare.size == rows.length
+                && spare.dimensions == dimensions && spare.rowsPerChunk == defaultRowsPerChunk(dimensions)
+                && (spare.chunks.length == 0 || !spare.chunks[0].isReadOnly());
+        return new OffHeapStorage(this, rows, reusable ? spare.chunks : null);
+    }
+}
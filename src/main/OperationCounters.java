@@ -0,0 +1,34 @@
+/**
+ * Counts the work done by the partitioning of a dataset, for {@link IterationEvent}s. A
+ * dataset only counts while an algorithm with a listener has attached counters to it; the
+ * hot loops check for null once per vector or once per pass.
+ */
+class OperationCounters {
+
+    /**
+     * number of data vectors assigned to a different cluster than before
+     */
+    long changedLabels = 0;
+    /**
+     * number of vector-to-centroid distances calculated
+     */
+    long distanceComputations = 0;
+
+    /**
+     * @return number of changed labels since the last call
+     */
+    long takeChangedLabels() {
+        long value = changedLabels;
+        changedLabels = 0;
+        return value;
+    }
+
+    /**
+     * @return number of distance computations since the last call
+     */
+    long takeDistanceComputations() {
+        long value = distanceComputations;
+        distanceComputations = 0;
+        return value;
+    }
+}
@@ -0,0 +1,376 @@
+import java.util.PriorityQueue;
+
+/**
+ * Pairwise nearest neighbor (PNN) algorithm: starts with every data vector (or each of a
+ * reduced set of initial clusters) as its own cluster, and repeatedly merges the pair of
+ * clusters whose merge increases the total squared error the least, until K clusters remain.
+ * The increase of merging clusters a and b is the Ward cost
+ * n_a * n_b / (n_a + n_b) * |c_a - c_b|^2, where n is the size (weight) and c the centroid.
+ *
+ * Each cluster keeps a pointer to its nearest neighbor, the cluster with the smallest merge
+ * cost, and the clusters are kept in a heap ordered by that cost. After a merge only the
+ * pointers of the merged cluster and of the clusters that pointed to one of the merged pair
+ * are recomputed; outdated heap entries are skipped when they come up. This takes
+ * O(tau*N^2) time instead of the O(N^3) of the naive algorithm, where tau is the average
+ * number of clusters whose pointer has to be recomputed.
+ *
+ * The result is a good initial solution for k-means or random swap.
+ *
+ * Based on P. Franti, T. Kaukoranta, D.-F. Shen, K.-S. Chang, "Fast and memory efficient
+ * implementation of the exact PNN", IEEE Trans. on Image Processing, 9 (5), 773-777, May 2000.
+ */
+public class PNN implements ClusteringAlgorithm {
+
+    /**
+     * number of initial clusters; 0 to start from the data vectors
+     */
+    private final int initialClusters;
+
+    /**
+     * number of merges done by the last run
+     */
+    private int iterations;
+
+    /**
+     * Exact PNN, starting from the data vectors. Takes O(N^2) time, so large datasets should
+     * be reduced first, for example to a coreset.
+     */
+    public PNN() {
+        this.initialClusters = 0;
+    }
+
+    /**
+     * PNN starting from a reduced set of initial clusters, formed by partitioning the data with
+     * random data vectors as centroids
+     *
+     * @param initialClusters number of initial clusters; at least the number of clusters is used
+     * @throws IllegalArgumentException if the number is not positive
+     */
+    public PNN(int initialClusters) throws IllegalArgumentException {
+        if (initialClusters <= 0)
+            throw new IllegalArgumentException("PNN(): initialClusters must be positive");
+        this.initialClusters = initialClusters;
+    }
+
+    /**
+     * Merges clusters until the number of clusters is reached
+     */
+    @Override
+    public void cluster(Dataset dataset) {
+        cluster(dataset, StopCondition.NEVER);
+    }
+
+    /**
+     * Merges clusters until the number of clusters is reached. A partial merge has too many
+     * clusters to be a solution, so the condition is only checked before the merging starts;
+     * if it is met, the dataset is left unchanged.
+     */
+    @Override
+    public void cluster(Dataset dataset, StopCondition stop) {
+        if (stop.isMet()) {
+            iterations = 0;
+            return;
+        }
+        int n = dataset.storage.size();
+        int k = dataset.getNumberOfClusters();
+        int m = initialClusters == 0 ? n : Math.min(n, Math.max(initialClusters, k));
+
+        // initial clusters
+        double[][] merged;
+        if (m == n) {
+            double[][] centroids = new double[n][];
+            double[] weights = new double[n];
+            for (int i = 0; i < n; i++) {
+                centroids[i] = dataset.storage.getRow(i);
+                weights[i] = dataset.weight(i);
+            }
+            merged = merge(centroids, weights, k);
+            iterations = n - merged.length;
+        } else {
+            double[][] centroids = new double[m][];
+            int[] rows = Dataset.pickRandom(n, m, dataset.random);
+            for (int c = 0; c < m; c++)
+                centroids[c] = dataset.storage.getRow(rows[c]);
+            merged = merge(dataset, centroids, k);
+            iterations = m - merged.length;
+        }
+
+        // with fewer distinct vectors than clusters the rest of the current centroids are kept
+        dataset.centroids = ClusteringState.copyOf(dataset.centroids);
+        System.arraycopy(merged, 0, dataset.centroids, 0, merged.length);
+        dataset.partition();
+    }
+
+    /**
+     * Partitions the data with the given centroids and merges the resulting clusters with PNN.
+     * Empty clusters are ignored. Used for starting from a reduced set of clusters, and as the
+     * crossover of {@link GeneticAlgorithm}.
+     *
+     * @param dataset   data to partition, not modified; can be shared by concurrent calls
+     * @param centroids centroids of the initial clusters, any number
+     * @param k         number of clusters to merge to
+     * @return centroids of the merged clusters; fewer than k if there were fewer non-empty
+     * initial clusters
+     */
+    static double[][] merge(Dataset dataset, double[][] centroids, int k) {
+        DataStorage storage = dataset.storage;
+        ClusterStatistics statistics = new ClusterStatistics(centroids.length, storage.dimensions());
+        for (int i = 0; i < storage.size(); i++) {
+            int nearest = 0;
+            double nearestDist = Double.POSITIVE_INFINITY;
+            for (int c = 0; c < centroids.length; c++) {
+                double dist = storage.distSq(i, centroids[c]);
+                if (dist < nearestDist) {
+                    nearestDist = dist;
+                    nearest = c;
+                }
+            }
+            statistics.add(storage, i, nearest, dataset.weight(i));
+        }
+        double[] weights = statistics.weights.clone();
+        double[][] means = new double[centroids.length][];
+        for (int c = 0; c < centroids.length; c++)
+            means[c] = weights[c] > 0 ? statistics.mean(c) : centroids[c];
+        return merge(means, weights, k);
+    }
+
+    /**
+     * Merges weighted clusters with PNN
+     *
+     * @param centroids centroids of the clusters, modified
+     * @param weights   weights of the clusters, modified; clusters with zero weight are ignored
+     * @param k         number of clusters to merge to
+     * @return centroids of the merged clusters; fewer than k if there were fewer non-empty
+     * clusters
+     */
+    static double[][] merge(double[][] centroids, double[] weights, int k) {
+        Clusters clusters = new Clusters(centroids, weights);
+        while (clusters.size() > k && clusters.mergeNearest()) {
+        }
+        double[][] result = new double[clusters.size()][];
+        int c = 0;
+        for (int a = 0; a < centroids.length; a++) {
+            if (clusters.alive[a])
+                result[c++] = centroids[a];
+        }
+        return result;
+    }
+
+    /**
+     * PNN is not iterative; the number of merges is set by the number of clusters
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations) {
+        cluster(dataset);
+    }
+
+    /**
+     * PNN is not iterative; the number of merges is set by the number of clusters
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations, StopCondition stop) {
+        cluster(dataset, stop);
+    }
+
+    /**
+     * @return number of merges done by the last run
+     */
+    @Override
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Clusters with nearest neighbor pointers and a lazily updated heap of merge costs
+     */
+    private static final class Clusters {
+        private final double[][] centroids;
+        private final double[] weights;
+        private final boolean[] alive;
+        /**
+         * nearest neighbor of each cluster and the merge cost with it
+         */
+        private final int[] nearest;
+        private final double[] cost;
+        /**
+         * incremented when the pointer of the cluster changes, to detect outdated heap entries
+         */
+        private final int[] version;
+        /**
+         * indices of the alive clusters, in no particular order
+         */
+        private final int[] active;
+        private final int[] positionInActive;
+        /**
+         * clusters whose pointer must be recomputed after a merge
+         */
+        private final int[] stale;
+        private int size;
+        private PriorityQueue<Candidate> heap = new PriorityQueue<>();
+
+        /**
+         * @param centroids initial centroids, merged in place
+         * @param weights   initial weights, merged in place; clusters with zero weight are ignored
+         */
+        Clusters(double[][] centroids, double[] weights) {
+            int m = centroids.length;
+            this.centroids = centroids;
+            this.weights = weights;
+            alive = new boolean[m];
+            nearest = new int[m];
+            cost = new double[m];
+            version = new int[m];
+            active = new int[m];
+            positionInActive = new int[m];
+            stale = new int[m];
+            for (int a = 0; a < m; a++) {
+                if (weights[a] > 0) {
+                    alive[a] = true;
+                    positionInActive[a] = size;
+                    active[size++] = a;
+                }
+                nearest[a] = -1;
+                cost[a] = Double.POSITIVE_INFINITY;
+            }
+            // each pair once
+            for (int i = 0; i < size; i++) {
+                int a = active[i];
+                for (int j = i + 1; j < size; j++) {
+                    int b = active[j];
+                    double d = mergeCost(a, b);
+                    if (d < cost[a]) {
+                        cost[a] = d;
+                        nearest[a] = b;
+                    }
+                    if (d < cost[b]) {
+                        cost[b] = d;
+                        nearest[b] = a;
+                    }
+                }
+            }
+            rebuildHeap();
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Merges the cluster pair with the smallest merge cost
+         *
+         * @return false if there is nothing to merge
+         */
+        boolean mergeNearest() {
+            Candidate top;
+            do {
+                top = heap.poll();
+                if (top == null)
+                    return false;
+            } while (!alive[top.cluster] || top.version != version[top.cluster] || nearest[top.cluster] < 0);
+            int a = top.cluster;
+            int b = nearest[a];
+
+            // the merged cluster replaces a
+            double total = weights[a] + weights[b];
+            for (int d = 0; d < centroids[a].length; d++)
+                centroids[a][d] = (weights[a] * centroids[a][d] + weights[b] * centroids[b][d]) / total;
+            weights[a] = total;
+            remove(b);
+
+            // new pointer of a; the other clusters may now be nearest to a, except those that
+            // pointed to the merged pair, which search again
+            int bestNeighbor = -1;
+            double bestCost = Double.POSITIVE_INFINITY;
+            int staleCount = 0;
+            for (int i = 0; i < size; i++) {
+                int x = active[i];
+                if (x == a)
+                    continue;
+                double d = mergeCost(a, x);
+                if (d < bestCost) {
+                    bestCost = d;
+                    bestNeighbor = x;
+                }
+                if (nearest[x] == a || nearest[x] == b)
+                    stale[staleCount++] = x;
+                else if (d < cost[x])
+                    setNearest(x, a, d);
+            }
+            setNearest(a, bestNeighbor, bestCost);
+            for (int s = 0; s < staleCount; s++)
+                setNearest(stale[s]);
+            // outdated entries accumulate; rebuild when they dominate the heap
+            if (heap.size() > 4 * size + 64)
+                rebuildHeap();
+            return true;
+        }
+
+        private double mergeCost(int a, int b) {
+            double total = weights[a] + weights[b];
+            return weights[a] * weights[b] / total * Dataset.distSq(centroids[a], centroids[b]);
+        }
+
+        /**
+         * Finds the nearest neighbor of a cluster by comparing it with all clusters
+         */
+        private void setNearest(int a) {
+            int neighbor = -1;
+            double bestCost = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                int x = active[i];
+                if (x == a)
+                    continue;
+                double d = mergeCost(a, x);
+                if (d < bestCost) {
+                    bestCost = d;
+                    neighbor = x;
+                }
+            }
+            setNearest(a, neighbor, bestCost);
+        }
+
+        private void setNearest(int a, int neighbor, double d) {
+            nearest[a] = neighbor;
+            cost[a] = d;
+            version[a]++;
+            if (neighbor >= 0)
+                heap.add(new Candidate(d, a, version[a]));
+        }
+
+        private void remove(int a) {
+            alive[a] = false;
+            int last = active[--size];
+            active[positionInActive[a]] = last;
+            positionInActive[last] = positionInActive[a];
+        }
+
+        private void rebuildHeap() {
+            heap = new PriorityQueue<>(Math.max(1, size));
+            for (int i = 0; i < size; i++) {
+                int a = active[i];
+                if (nearest[a] >= 0)
+                    heap.add(new Candidate(cost[a], a, version[a]));
+            }
+        }
+    }
+
+    /**
+     * Heap entry: merge cost of a cluster with its nearest neighbor when the entry was added
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        final double cost;
+        final int cluster;
+        final int version;
+
+        Candidate(double cost, int cluster, int version) {
+            this.cost = cost;
+            this.cluster = cluster;
+            this.version = version;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(cost, other.cost);
+        }
+    }
+}
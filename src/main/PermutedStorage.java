@@ -0,0 +1,87 @@
+import java.nio.DoubleBuffer;
+
+/**
+ * View of a data storage with the vectors in a different order. Used for presenting a
+ * reordered data matrix in the original input order without copying it.
+ */
+class PermutedStorage implements DataStorage {
+
+    /**
+     * underlying storage
+     */
+    private final DataStorage storage;
+    /**
+     * row of the underlying storage for each vector of the view
+     */
+    private final int[] rows;
+
+    /**
+     * @param storage underlying storage, not copied
+     * @param rows    row of the underlying storage for each vector of the view, not copied
+     */
+    PermutedStorage(DataStorage storage, int[] rows) {
+        this.storage = storage;
+        this.rows = rows;
+    }
+
+    @Override
+    public int size() {
+        return rows.length;
+    }
+
+    @Override
+    public int dimensions() {
+        return storage.dimensions();
+    }
+
+    @Override
+    public StoragePrecision precision() {
+        return storage.precision();
+    }
+
+    @Override
+    public double get(int row, int dimension) {
+        return storage.get(rows[row], dimension);
+    }
+
+    @Override
+    public double[] getRow(int row) {
+        return storage.getRow(rows[row]);
+    }
+
+    @Override
+    public DoubleBuffer rowView(int row) {
+        return storage.rowView(rows[row]);
+    }
+
+    @Override
+    public double distSq(int row, double[] point) {
+        return storage.distSq(rows[row], point);
+    }
+
+    @Override
+    public double distSq(int rowA, int rowB) {
+        return storage.distSq(rows[rowA], rows[rowB]);
+    }
+
+    @Override
+    public double addTo(int row, double[] sum) {
+        return storage.addTo(rows[row], sum);
+    }
+
+    @Override
+    public double subtractFrom(int row, double[] sum) {
+        return storage.subtractFrom(rows[row], sum);
+    }
+
+    /**
+     * @return new storage of the underlying format
+     */
+    @Override
+    public DataStorage select(int[] selected) {
+        int[] underlying = new int[selected.length];
+        for (int i = 0; i < selected.length; i++)
+            underlying[i] = rows[selected[i]];
+        return storage.select(underlying);
+    }
+}
@@ -3,17 +3,170 @@ import java.util.Arrays;
 /**
  * Random swap algorithm
  *
+ * Each trial swaps one centroid to the position of a data vector, runs two k-means iterations
+ * and keeps the result only if the error decreased. By default both the removed centroid and
+ * the new position are picked uniformly at random; the cost-guided strategies pick the
+ * centroid whose removal increases the error the least, and a data vector with probability
+ * proportional to its current error, so that fewer trials are rejected.
+ *
+ * In the adaptive mode the algorithm stops after a number of consecutive trials that did not
+ * improve the error by more than a relative threshold, and the k-means iterations of each
+ * trial continue until they stop improving the error, up to a maximum.
+ *
  * @author Juho Puumalainen
  */
 public class RandomSwap implements ClusteringAlgorithm {
 
     /**
-     * Iterates Random swap for 1000 times
+     * number of trials of {@link #cluster(Dataset)}
+     */
+    public static final int DEFAULT_TRIALS = 1000;
+    /**
+     * number of k-means iterations after each swap; the minimum in the adaptive mode
+     */
+    public static final int LOCAL_ITERATIONS = 2;
+    /**
+     * default relative improvement of the error below which a trial counts as not improving
+     */
+    public static final double DEFAULT_MIN_IMPROVEMENT = 1E-3;
+    /**
+     * default maximum number of k-means iterations after each swap in the adaptive mode
+     */
+    public static final int DEFAULT_MAX_LOCAL_ITERATIONS = 10;
+
+    /**
+     * How the swapped centroid is selected
+     */
+    public enum Removal {
+        /**
+         * uniformly at random
+         */
+        RANDOM,
+        /**
+         * the centroid whose removal increases the error the least, when its vectors move to
+         * their second nearest centroid; after each rejected trial the next cheapest one
+         */
+        MIN_COST
+    }
+
+    /**
+     * How the new position of the swapped centroid is selected
+     */
+    public enum Insertion {
+        /**
+         * a uniformly random data vector
+         */
+        RANDOM,
+        /**
+         * a data vector picked with probability proportional to its squared error
+         */
+        ERROR_PROPORTIONAL
+    }
+
+    private final Removal removal;
+    private final Insertion insertion;
+    /**
+     * number of consecutive trials without improvement after which the run stops; 0 to run
+     * all trials
+     */
+    private final int patience;
+    /**
+     * relative improvement of the error below which a trial or a k-means iteration counts as
+     * not improving
+     */
+    private final double minImprovement;
+    /**
+     * maximum number of k-means iterations after each swap
+     */
+    private final int maxLocalIterations;
+
+    /**
+     * number of iterations done by the last run
+     */
+    private int iterations;
+    /**
+     * number of swaps accepted in the last run
+     */
+    private int acceptedSwaps;
+    /**
+     * number of k-means iterations in all trials of the last run
+     */
+    private int localIterations;
+    /**
+     * number of trials the last run was allowed
+     */
+    private int trialBudget;
+    /**
+     * called after each trial; null if none
+     */
+    private IterationListener listener;
+
+    /**
+     * Random removal and insertion
+     */
+    public RandomSwap() {
+        this(Removal.RANDOM, Insertion.RANDOM);
+    }
+
+    /**
+     * @param removal   how the swapped centroid is selected
+     * @param insertion how the new position of the centroid is selected
+     */
+    public RandomSwap(Removal removal, Insertion insertion) {
+        this(removal, insertion, 0, 0, LOCAL_ITERATIONS);
+    }
+
+    /**
+     * @param removal            how the swapped centroid is selected
+     * @param insertion          how the new position of the centroid is selected
+     * @param patience           stop after this many consecutive trials that did not improve the
+     *                           error more than minImprovement; 0 to run all trials
+     * @param minImprovement     relative improvement of the error below which a trial or a
+     *                           k-means iteration counts as not improving, in range [0, 1[
+     * @param maxLocalIterations maximum number of k-means iterations after each swap; the
+     *                           iterations stop earlier if they do not improve the error, but
+     *                           not before {@link #LOCAL_ITERATIONS}
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    public RandomSwap(Removal removal, Insertion insertion, int patience, double minImprovement,
+                      int maxLocalIterations) throws IllegalArgumentException {
+        if (patience < 0)
+            throw new IllegalArgumentException("RandomSwap(): patience cannot be negative");
+        if (minImprovement < 0 || minImprovement >= 1)
+            throw new IllegalArgumentException("RandomSwap(): minImprovement is not within acceptable range: [0, 1[");
+        if (maxLocalIterations < LOCAL_ITERATIONS)
+            throw new IllegalArgumentException("RandomSwap(): maxLocalIterations must be at least " + LOCAL_ITERATIONS);
+        this.removal = removal;
+        this.insertion = insertion;
+        this.patience = patience;
+        this.minImprovement = minImprovement;
+        this.maxLocalIterations = maxLocalIterations;
+    }
+
+    /**
+     * Adaptive random swap: stops after the given number of consecutive trials without
+     * improvement, iterates k-means after each swap until it stops improving
+     *
+     * @param removal   how the swapped centroid is selected
+     * @param insertion how the new position of the centroid is selected
+     * @param patience  number of consecutive trials without improvement before stopping
+     * @return the algorithm with the default thresholds
+     * @throws IllegalArgumentException if the patience is not positive
+     */
+    public static RandomSwap adaptive(Removal removal, Insertion insertion, int patience)
+            throws IllegalArgumentException {
+        if (patience <= 0)
+            throw new IllegalArgumentException("adaptive(): patience must be positive");
+        return new RandomSwap(removal, insertion, patience, DEFAULT_MIN_IMPROVEMENT, DEFAULT_MAX_LOCAL_ITERATIONS);
+    }
+
+    /**
+     * Iterates Random swap for 1000 times, or until the adaptive stopping rule ends the run
      *
      * @param dataset dataset to run the algorithm on
      */
     public void cluster(Dataset dataset) {
-        cluster(dataset, 1000);
+        cluster(dataset, DEFAULT_TRIALS);
     }
 
     /**
@@ -23,29 +176,195 @@ public class RandomSwap implements ClusteringAlgorithm {
      * @param maxIterations maximum number of iterations (number of swamps)
      */
     public void cluster(Dataset dataset, int maxIterations) {
-        double prevMSE = dataset.MSE();
-        for (int iteration = 1; iteration <= maxIterations; iteration++) {
-            double[][] prevCentroids = Arrays.copyOf(dataset.centroids, dataset.centroids.length);
+        cluster(dataset, maxIterations, StopCondition.NEVER);
+    }
 
-            // swap random centroid with random data vector
-            dataset.centroids[(int)(dataset.centroids.length * Math.random())] =
-                    dataset.data[(int)(dataset.data.length * Math.random())];
+    /**
+     * Iterates Random swap for 1000 times, or until the adaptive stopping rule ends the run or
+     * until stopped
+     */
+    @Override
+    public void cluster(Dataset dataset, StopCondition stop) {
+        cluster(dataset, DEFAULT_TRIALS, stop);
+    }
+
+    /**
+     * Iterates Random swap until set amount of iterations have been done or until stopped.
+     * A trial that made the error worse is reverted, so the dataset always holds the best
+     * solution so far.
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations, StopCondition stop) {
+        OperationCounters previousCounters = dataset.counters;
+        dataset.counters = listener != null || ClusteringEvents.isIterationRecorded()
+                ? new OperationCounters() : null;
+        try {
+            run(dataset, maxIterations, stop);
+        } finally {
+            dataset.counters = previousCounters;
+        }
+    }
 
-            // two k-means iterations
-            dataset.partition();
-            dataset.updateCentroids();
-            dataset.partition();
-            dataset.updateCentroids();
+    private void run(Dataset dataset, int maxIterations, StopCondition stop) {
+        double prevMSE = dataset.partition() / dataset.getTotalWeight();
+        iterations = 0;
+        acceptedSwaps = 0;
+        localIterations = 0;
+        trialBudget = maxIterations;
+        int withoutImprovement = 0;
+        // centroids ordered by removal cost, recalculated after an accepted swap
+        int[] removalOrder = null;
+        int rejectedInRow = 0;
+        for (int iteration = 1; iteration <= maxIterations && !stop.isMet(); iteration++) {
+            iterations = iteration;
+            ClusteringEvents.Iteration event = ClusteringEvents.iteration();
+            ClusteringState prevState = dataset.saveState();
 
-            double newMSE = dataset.partition() / dataset.data.length;
+            int removed;
+            if (removal == Removal.MIN_COST) {
+                if (removalOrder == null)
+                    removalOrder = removalOrder(dataset);
+                removed = removalOrder[rejectedInRow % removalOrder.length];
+            } else {
+                removed = dataset.random.nextInt(dataset.centroids.length);
+            }
+            int row = insertion == Insertion.ERROR_PROPORTIONAL ? errorProportionalRow(dataset) : dataset.randomRow();
+            dataset.centroids[removed] = dataset.storage.getRow(row);
+
+            // k-means iterations; each partitioning gives the error of the previous iteration
+            double newMSE;
+            double stepMSE = Double.POSITIVE_INFINITY;
+            for (int step = 1; ; step++) {
+                newMSE = dataset.partition() / dataset.getTotalWeight();
+                if (step > LOCAL_ITERATIONS
+                        && (step > maxLocalIterations || !(stepMSE - newMSE > minImprovement * stepMSE)))
+                    break;
+                stepMSE = newMSE;
+                dataset.updateCentroids();
+                localIterations++;
+            }
+
+            if (prevMSE - newMSE > minImprovement * prevMSE)
+                withoutImprovement = 0;
+            else
+                withoutImprovement++;
             if(prevMSE < newMSE){
-                // got worse, revert
-                dataset.centroids = prevCentroids;
+                // got worse, revert (restores partitions as well, no re-partitioning needed)
+                dataset.restoreState(prevState);
+                rejectedInRow++;
             } else {
                 //System.out.printf("RS %d: %f\n", iteration, newMSE);
                 prevMSE = newMSE;
+                acceptedSwaps++;
+                removalOrder = null;
+                rejectedInRow = 0;
+            }
+            dataset.regroupIfDue();
+            if (dataset.counters != null) {
+                long changedLabels = dataset.counters.takeChangedLabels();
+                long distanceComputations = dataset.counters.takeDistanceComputations();
+                event.end(this, dataset, iteration, distanceComputations, prevMSE * dataset.getTotalWeight());
+                if (listener != null) {
+                    listener.iterationDone(new IterationEvent(this, iteration, prevMSE * dataset.getTotalWeight(),
+                            changedLabels, distanceComputations, -1, acceptedSwaps, Double.NaN));
+                }
             }
+            if (patience > 0 && withoutImprovement >= patience)
+                break;
         }
-        dataset.partition(); // this is required if the last swap was reverted
+    }
+
+    /**
+     * Orders the centroids by the increase of the error if the centroid was removed and its
+     * vectors moved to their second nearest centroid. Costs one pass over the data, O(N*K*D).
+     *
+     * @return cluster indices, cheapest removal first
+     */
+    private static int[] removalOrder(Dataset dataset) {
+        int k = dataset.centroids.length;
+        double[] costs = new double[k];
+        if (dataset.counters != null)
+            dataset.counters.distanceComputations += (long) dataset.storage.size() * k;
+        for (int i = 0; i < dataset.storage.size(); i++) {
+            int label = dataset.labels.get(i);
+            double nearest = dataset.storage.distSq(i, dataset.centroids[label]);
+            double secondNearest = Double.POSITIVE_INFINITY;
+            for (int c = 0; c < k; c++) {
+                if (c == label)
+                    continue;
+                double dist = dataset.storage.distSq(i, dataset.centroids[c]);
+                if (dist < secondNearest)
+                    secondNearest = dist;
+            }
+            costs[label] += dataset.weight(i) * (secondNearest - nearest);
+        }
+        Integer[] order = new Integer[k];
+        for (int c = 0; c < k; c++)
+            order[c] = c;
+        Arrays.sort(order, (a, b) -> Double.compare(costs[a], costs[b]));
+        int[] result = new int[k];
+        for (int c = 0; c < k; c++)
+            result[c] = order[c];
+        return result;
+    }
+
+    /**
+     * Picks a data vector with probability proportional to its weighted squared distance to
+     * its centroid in the current partitioning
+     *
+     * @return row of the vector; a uniformly random row if all errors are zero
+     */
+    private static int errorProportionalRow(Dataset dataset) {
+        int n = dataset.storage.size();
+        double total = 0;
+        for (int i = 0; i < n; i++)
+            total += dataset.weight(i) * dataset.distances.get(i);
+        if (!(total > 0))
+            return dataset.randomRow();
+        double target = dataset.random.nextDouble() * total;
+        double sum = 0;
+        int last = 0;
+        for (int i = 0; i < n; i++) {
+            double error = dataset.weight(i) * dataset.distances.get(i);
+            if (error > 0) {
+                sum += error;
+                last = i;
+                if (sum > target)
+                    return i;
+            }
+        }
+        return last;
+    }
+
+    @Override
+    public int getIterations() {
+        return iterations;
+    }
+
+    @Override
+    public void setListener(IterationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return number of swaps accepted in the last run
+     */
+    public int getAcceptedSwaps() {
+        return acceptedSwaps;
+    }
+
+    /**
+     * @return number of k-means iterations in all trials of the last run
+     */
+    public int getLocalIterations() {
+        return localIterations;
+    }
+
+    /**
+     * @return number of trials the last run was allowed but did not run, because the
+     * stopping rule or a stop condition ended it early
+     */
+    public int getTrialsSaved() {
+        return trialBudget - iterations;
     }
 }
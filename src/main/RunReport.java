@@ -0,0 +1,335 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Machine-readable report of the repeats of {@link Clustering#runMultiple(int, StopCondition)}:
+ * the iterations, time, error, centroid index and distance computations of every repeat, and
+ * their mean, minimum, percentiles and maximum, for tracking the performance across versions.
+ *
+ * The report counts the distances of the iterations reported to it as an
+ * {@link IterationListener}; attach it to the algorithm to have them counted.
+ */
+public final class RunReport implements IterationListener {
+
+    /**
+     * percentiles of the per-repeat values given in the report
+     */
+    private static final double[] PERCENTILES = {50, 90};
+
+    /**
+     * Results of one repeat
+     */
+    public static final class Repeat {
+        /**
+         * repeat number, starting from 1
+         */
+        public final int repeat;
+        /**
+         * iterations done by the algorithm
+         */
+        public final int iterations;
+        /**
+         * wall-clock time of the repeat in milliseconds
+         */
+        public final double timeMs;
+        /**
+         * mean squared error of the result
+         */
+        public final double MSE;
+        /**
+         * centroid index of the result; -1 without the real centroids
+         */
+        public final int CI;
+        /**
+         * distances calculated in the reported iterations; -1 if the algorithm did not count
+         * them
+         */
+        public final long distanceComputations;
+
+        Repeat(int repeat, int iterations, double timeMs, double MSE, int CI, long distanceComputations) {
+            this.repeat = repeat;
+            this.iterations = iterations;
+            this.timeMs = timeMs;
+            this.MSE = MSE;
+            this.CI = CI;
+            this.distanceComputations = distanceComputations;
+        }
+
+        /**
+         * @return data vectors processed per second, counting each vector once per iteration
+         */
+        double throughput(int vectors) {
+            return timeMs > 0 ? (double) vectors * iterations / (timeMs / 1000) : Double.NaN;
+        }
+    }
+
+    private final String algorithm;
+    private final int vectors;
+    private final int clusters;
+    private final int dimensions;
+    private final long seed;
+    private final List<Repeat> repeats = new ArrayList<>();
+
+    /**
+     * distances reported by the iterations of the current repeat
+     */
+    private long distanceComputations = 0;
+    /**
+     * whether an iteration of the current repeat counted its distances
+     */
+    private boolean counted = false;
+    /**
+     * whether an iteration of the current repeat did not count its distances
+     */
+    private boolean uncounted = false;
+
+    /**
+     * @param algorithm  name of the algorithm
+     * @param vectors    number of data vectors
+     * @param clusters   number of clusters
+     * @param dimensions number of dimensions of the data
+     * @param seed       seed of the random number generator
+     */
+    public RunReport(String algorithm, int vectors, int clusters, int dimensions, long seed) {
+        this.algorithm = algorithm;
+        this.vectors = vectors;
+        this.clusters = clusters;
+        this.dimensions = dimensions;
+        this.seed = seed;
+    }
+
+    /**
+     * Adds up the distance computations of the current repeat
+     */
+    @Override
+    public void iterationDone(IterationEvent event) {
+        if (event.distanceComputations >= 0) {
+            distanceComputations += event.distanceComputations;
+            counted = true;
+        } else {
+            uncounted = true;
+        }
+    }
+
+    /**
+     * Records a finished repeat, with the distances reported since the previous one
+     *
+     * @param repeat     repeat number
+     * @param iterations iterations done by the algorithm
+     * @param timeMs     time of the repeat in milliseconds
+     * @param MSE        mean squared error of the result
+     * @param CI         centroid index of the result; -1 if not known
+     */
+    void addRepeat(int repeat, int iterations, double timeMs, double MSE, int CI) {
+        repeats.add(new Repeat(repeat, iterations, timeMs, MSE, CI,
+                counted && !uncounted ? distanceComputations : -1));
+        distanceComputations = 0;
+        counted = false;
+        uncounted = false;
+    }
+
+    /**
+     * @return the recorded repeats in order
+     */
+    public List<Repeat> getRepeats() {
+        return Collections.unmodifiableList(repeats);
+    }
+
+    /**
+     * @return fraction of the repeats that reached CI=0; NaN if the CI is not known
+     */
+    public double successRate() {
+        int known = 0;
+        int successes = 0;
+        for (Repeat repeat : repeats) {
+            if (repeat.CI >= 0) {
+                known++;
+                if (repeat.CI == 0)
+                    successes++;
+            }
+        }
+        return known > 0 ? (double) successes / known : Double.NaN;
+    }
+
+    /**
+     * @return data vectors processed per second over all repeats, counting each vector once
+     * per iteration
+     */
+    public double throughput() {
+        long iterations = 0;
+        double timeMs = 0;
+        for (Repeat repeat : repeats) {
+            iterations += repeat.iterations;
+            timeMs += repeat.timeMs;
+        }
+        return timeMs > 0 ? (double) vectors * iterations / (timeMs / 1000) : Double.NaN;
+    }
+
+    /**
+     * Writes the report as a JSON object: the run parameters, an array of the repeats, the
+     * statistics of each per-repeat value, the CI=0 rate and the throughput of all repeats
+     * together. Unknown values are null.
+     *
+     * @param out destination; not closed
+     * @throws IOException if writing fails
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write("{\n");
+        out.write("  \"algorithm\": " + quote(algorithm) + ",\n");
+        out.write("  \"vectors\": " + vectors + ",\n");
+        out.write("  \"clusters\": " + clusters + ",\n");
+        out.write("  \"dimensions\": " + dimensions + ",\n");
+        out.write("  \"seed\": " + seed + ",\n");
+        out.write("  \"repeats\": [");
+        for (int r = 0; r < repeats.size(); r++) {
+            Repeat repeat = repeats.get(r);
+            out.write(r > 0 ? ",\n" : "\n");
+            out.write("    {\"repeat\": " + repeat.repeat
+                    + ", \"iterations\": " + repeat.iterations
+                    + ", \"timeMs\": " + number(repeat.timeMs)
+                    + ", \"mse\": " + number(repeat.MSE)
+                    + ", \"ci\": " + (repeat.CI >= 0 ? Integer.toString(repeat.CI) : "null")
+                    + ", \"distanceComputations\": "
+                    + (repeat.distanceComputations >= 0 ? Long.toString(repeat.distanceComputations) : "null")
+                    + ", \"throughput\": " + number(repeat.throughput(vectors)) + "}");
+        }
+        out.write(repeats.isEmpty() ? "],\n" : "\n  ],\n");
+        out.write("  \"summary\": {\n");
+        String[] columns = columns();
+        for (int c = 1; c < columns.length; c++) {
+            if (columns[c].equals("ci0"))
+                continue; // given as ciZeroRate
+            double[] stats = statistics(column(c));
+            out.write("    " + quote(columns[c]) + ": {");
+            String[] names = statisticNames();
+            for (int s = 0; s < names.length; s++)
+                out.write((s > 0 ? ", " : "") + quote(names[s]) + ": " + number(stats[s]));
+            out.write("},\n");
+        }
+        out.write("    \"ciZeroRate\": " + number(successRate()) + ",\n");
+        out.write("    \"totalThroughput\": " + number(throughput()) + "\n");
+        out.write("  }\n");
+        out.write("}\n");
+    }
+
+    /**
+     * Writes the report as CSV: a header, a row per repeat, and a row per statistic of the
+     * columns (mean, min, p50, p90, max) with the name of the statistic in the repeat column.
+     * The ci0 column is 1 for the repeats that reached CI=0, so its mean is the success rate.
+     * Unknown values are empty.
+     *
+     * @param out destination; not closed
+     * @throws IOException if writing fails
+     */
+    public void writeCsv(Writer out) throws IOException {
+        String[] columns = columns();
+        out.write(String.join(",", columns) + "\n");
+        double[][] values = new double[columns.length][];
+        for (int c = 1; c < columns.length; c++)
+            values[c] = column(c);
+        for (int r = 0; r < repeats.size(); r++) {
+            StringBuilder row = new StringBuilder().append(repeats.get(r).repeat);
+            for (int c = 1; c < columns.length; c++)
+                row.append(',').append(csvNumber(values[c][r]));
+            out.write(row + "\n");
+        }
+        String[] names = statisticNames();
+        double[][] stats = new double[columns.length][];
+        for (int c = 1; c < columns.length; c++)
+            stats[c] = statistics(values[c]);
+        for (int s = 0; s < names.length; s++) {
+            StringBuilder row = new StringBuilder(names[s]);
+            for (int c = 1; c < columns.length; c++)
+                row.append(',').append(csvNumber(stats[c][s]));
+            out.write(row + "\n");
+        }
+    }
+
+    /**
+     * @return names of the per-repeat values; the first one is the repeat number
+     */
+    private static String[] columns() {
+        return new String[]{"repeat", "iterations", "timeMs", "mse", "ci", "ci0", "distanceComputations", "throughput"};
+    }
+
+    /**
+     * @return per-repeat values of a column of {@link #columns()}; NaN if unknown
+     */
+    private double[] column(int c) {
+        double[] values = new double[repeats.size()];
+        for (int r = 0; r < values.length; r++) {
+            Repeat repeat = repeats.get(r);
+            switch (c) {
+                case 1: values[r] = repeat.iterations; break;
+                case 2: values[r] = repeat.timeMs; break;
+                case 3: values[r] = repeat.MSE; break;
+                case 4: values[r] = repeat.CI >= 0 ? repeat.CI : Double.NaN; break;
+                case 5: values[r] = repeat.CI >= 0 ? (repeat.CI == 0 ? 1 : 0) : Double.NaN; break;
+                case 6: values[r] = repeat.distanceComputations >= 0 ? repeat.distanceComputations : Double.NaN; break;
+                default: values[r] = repeat.throughput(vectors); break;
+            }
+        }
+        return values;
+    }
+
+    private static String[] statisticNames() {
+        String[] names = new String[3 + PERCENTILES.length];
+        names[0] = "mean";
+        names[1] = "min";
+        for (int p = 0; p < PERCENTILES.length; p++)
+            names[2 + p] = "p" + (int) PERCENTILES[p];
+        names[names.length - 1] = "max";
+        return names;
+    }
+
+    /**
+     * @return mean, minimum, percentiles and maximum of the known values, in the order of
+     * {@link #statisticNames()}; NaN if no value is known
+     */
+    static double[] statistics(double[] values) {
+        double[] known = Arrays.stream(values).filter(v -> !Double.isNaN(v)).sorted().toArray();
+        double[] stats = new double[3 + PERCENTILES.length];
+        if (known.length == 0) {
+            Arrays.fill(stats, Double.NaN);
+            return stats;
+        }
+        stats[0] = Arrays.stream(known).sum() / known.length;
+        stats[1] = known[0];
+        for (int p = 0; p < PERCENTILES.length; p++)
+            stats[2 + p] = percentile(known, PERCENTILES[p]);
+        stats[stats.length - 1] = known[known.length - 1];
+        return stats;
+    }
+
+    /**
+     * Nearest-rank percentile
+     *
+     * @param sorted values in ascending order, at least one
+     * @param p      percentile in range ]0, 100]
+     * @return the smallest value that at least p percent of the values are less than or equal to
+     */
+    static double percentile(double[] sorted, double p) {
+        int rank = (int) Math.ceil(p / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+    }
+
+    private static String csvNumber(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            return "";
+        if (value == Math.rint(value) && Math.abs(value) < 1E15)
+            return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Data matrix of integer values stored as 16-bit integers in a single row-major array.
+ * A quarter of the memory of {@link DoubleStorage}.
+ *
+ * Squared norms and distances between data vectors are always calculated exactly with 64-bit
+ * integer arithmetic: a squared 16-bit difference fits in 32 bits.
+ */
+public class ShortStorage implements DataStorage {
+
+    /**
+     * data vectors, row after row
+     */
+    private final short[] values;
+    private final int size;
+    private final int dimensions;
+
+    /**
+     * Converts data to 16-bit integer storage
+     *
+     * @param source data to be stored
+     * @throws IllegalArgumentException if the data contains non-integer values or values outside
+     *                                  the short range, or does not fit in a single array
+     */
+    public ShortStorage(DataStorage source) throws IllegalArgumentException {
+        this(source.size(), source.dimensions());
+        for (int i = 0; i < size; i++) {
+            for (int d = 0; d < dimensions; d++) {
+                double value = source.get(i, d);
+                if (value != Math.rint(value) || value < Short.MIN_VALUE || value > Short.MAX_VALUE)
+                    throw new IllegalArgumentException("ShortStorage(): Data contains values that are not 16-bit integers");
+                values[i * dimensions + d] = (short) value;
+            }
+        }
+    }
+
+    private ShortStorage(int size, int dimensions) throws IllegalArgumentException {
+        if ((long) size * dimensions > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("ShortStorage(): Data matrix is too large for a single array");
+        this.size = size;
+        this.dimensions = dimensions;
+        this.values = new short[size * dimensions];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public StoragePrecision precision() {
+        return StoragePrecision.INT16;
+    }
+
+    @Override
+    public double get(int row, int dimension) {
+        return values[row * dimensions + dimension];
+    }
+
+    @Override
+    public double[] getRow(int row) {
+        double[] result = new double[dimensions];
+        int offset = row * dimensions;
+        for (int d = 0; d < dimensions; d++)
+            result[d] = values[offset + d];
+        return result;
+    }
+
+    @Override
+    public double distSq(int row, double[] point) {
+        int offset = row * dimensions;
+        double sum = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double diff = values[offset + d] - point[d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double distSq(int rowA, int rowB) {
+        int offsetA = rowA * dimensions;
+        int offsetB = rowB * dimensions;
+        long sum = 0;
+        for (int d = 0; d < dimensions; d++) {
+            long diff = values[offsetA + d] - values[offsetB + d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    @Override
+    public double addTo(int row, double[] sum) {
+        int offset = row * dimensions;
+        long norm = 0;
+        for (int d = 0; d < dimensions; d++) {
+            int v = values[offset + d];
+            sum[d] += v;
+            norm += v * v;
+        }
+        return norm;
+    }
+
+    @Override
+    public double subtractFrom(int row, double[] sum) {
+        int offset = row * dimensions;
+        long norm = 0;
+        for (int d = 0; d < dimensions; d++) {
+            int v = values[offset + d];
+            sum[d] -= v;
+            norm += v * v;
+        }
+        return norm;
+    }
+
+    @Override
+    public ShortStorage select(int[] rows) {
+        ShortStorage result = new ShortStorage(rows.length, dimensions);
+        for (int i = 0; i < rows.length; i++)
+            System.arraycopy(values, rows[i] * dimensions, result.values, i * dimensions, dimensions);
+        return result;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Space-filling curves used for ordering the data vectors so that vectors close to each other
+ * in space are also close to each other in the data matrix.
+ *
+ * Each component is scaled to the range of the data and quantized to an integer grid. The
+ * number of bits per component is chosen so that the curve index fits in 63 bits; with high
+ * dimensional data only the first 63 components are used.
+ */
+public enum SpaceFillingCurve {
+
+    /**
+     * Z-order curve: the bits of the components are interleaved. Cheap, but the curve makes
+     * long jumps between the quadrants.
+     */
+    MORTON,
+
+    /**
+     * Hilbert curve: consecutive grid cells are always adjacent, which gives better locality
+     * than the Z-order curve.
+     *
+     * Based on J. Skilling, "Programming the Hilbert curve", AIP Conference Proceedings 707, 2004.
+     */
+    HILBERT;
+
+    /**
+     * Calculates the curve index of each data vector
+     *
+     * @param data data vectors
+     * @return curve index of each vector
+     */
+    public long[] keys(double[][] data) {
+        return keys(new DoubleStorage(data));
+    }
+
+    /**
+     * Calculates the curve index of each data vector
+     *
+     * @param data data vectors
+     * @return curve index of each vector
+     */
+    public long[] keys(DataStorage data) {
+        long[] keys = new long[data.size()];
+        if (data.size() == 0)
+            return keys;
+        int dimensions = Math.min(data.dimensions(), 63);
+        int bits = Math.min(31, 63 / dimensions);
+
+        double[] min = new double[dimensions];
+        double[] max = new double[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            min[d] = Double.POSITIVE_INFINITY;
+            max[d] = Double.NEGATIVE_INFINITY;
+        }
+        for (int i = 0; i < data.size(); i++) {
+            for (int d = 0; d < dimensions; d++) {
+                min[d] = Math.min(min[d], data.get(i, d));
+                max[d] = Math.max(max[d], data.get(i, d));
+            }
+        }
+
+        long maxCoordinate = (1L << bits) - 1;
+        int[] coordinates = new int[dimensions];
+        for (int i = 0; i < data.size(); i++) {
+            for (int d = 0; d < dimensions; d++) {
+                double range = max[d] - min[d];
+                coordinates[d] = range > 0 ? (int) ((data.get(i, d) - min[d]) / range * maxCoordinate) : 0;
+            }
+            keys[i] = key(coordinates, bits);
+        }
+        return keys;
+    }
+
+    /**
+     * Calculates the curve index of a point on the integer grid
+     *
+     * @param coordinates grid coordinates, each in range [0, 2^bits[; modified by this method
+     * @param bits        number of bits per coordinate
+     * @return curve index
+     */
+    long key(int[] coordinates, int bits) {
+        if (this == HILBERT)
+            axesToTranspose(coordinates, bits);
+        return interleave(coordinates, bits);
+    }
+
+    /**
+     * Interleaves the bits of the coordinates, most significant bits first
+     */
+    private static long interleave(int[] coordinates, int bits) {
+        long key = 0;
+        for (int bit = bits - 1; bit >= 0; bit--) {
+            for (int coordinate : coordinates) {
+                key = (key << 1) | ((coordinate >>> bit) & 1);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Converts grid coordinates to the "transposed" Hilbert index in place. Interleaving the
+     * bits of the result gives the Hilbert index.
+     */
+    private static void axesToTranspose(int[] x, int bits) {
+        int n = x.length;
+        int m = 1 << (bits - 1);
+        // inverse undo
+        for (int q = m; q > 1; q >>= 1) {
+            int p = q - 1;
+            for (int i = 0; i < n; i++) {
+                if ((x[i] & q) != 0) {
+                    x[0] ^= p; // invert
+                } else {
+                    int t = (x[0] ^ x[i]) & p; // exchange
+                    x[0] ^= t;
+                    x[i] ^= t;
+                }
+            }
+        }
+        // gray encode
+        for (int i = 1; i < n; i++)
+            x[i] ^= x[i - 1];
+        int t = 0;
+        for (int q = m; q > 1; q >>= 1) {
+            if ((x[n - 1] & q) != 0)
+                t ^= q - 1;
+        }
+        for (int i = 0; i < n; i++)
+            x[i] ^= t;
+    }
+}
@@ -1,8 +1,18 @@
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Stochastic relaxation algorithm
  *
+ * The partitioning and the perturbations are done in blocks on a thread pool: each block of
+ * data vectors accumulates its own cluster statistics, and each block of centroids gets its
+ * own random number stream, split from the stream of the dataset. The blocks do not depend on
+ * the number of threads, so the result depends only on the seed.
+ *
  * @author Juho Puumalainen
  */
 public class StochasticRelaxation implements ClusteringAlgorithm {
@@ -12,6 +22,15 @@ public class StochasticRelaxation implements ClusteringAlgorithm {
      * the algorithm exits.
      */
     private static final double EXIT_EPSILON = 1E-6;
+    /**
+     * number of centroids perturbed with one random number stream
+     */
+    private static final int PERTURBATION_BLOCK_SIZE = 64;
+
+    /**
+     * default base of the temperature function
+     */
+    public static final double DEFAULT_TEMPERATURE_ALPHA = 0.975;
 
     /**
      * Constant base of the temperature function. Value in range
@@ -20,12 +39,26 @@ public class StochasticRelaxation implements ClusteringAlgorithm {
      *
      * Value 0.95 suggested by the paper.
      */
-    private double temperatureAlpha = 0.975;
+    private final double temperatureAlpha;
+    /**
+     * number of worker threads
+     */
+    private final int threads;
+
+    /**
+     * number of iterations done by the last run, not counting the final k-means
+     */
+    private int iterations;
+    /**
+     * called after each iteration; null if none
+     */
+    private IterationListener listener;
 
     /**
-     * Empty constructor using default parameters
+     * Empty constructor using default parameters, one thread per available processor
      */
     public StochasticRelaxation() {
+        this(DEFAULT_TEMPERATURE_ALPHA);
     }
 
     /**
@@ -35,9 +68,21 @@ public class StochasticRelaxation implements ClusteringAlgorithm {
      * @param temperatureAlpha governs how quickly the random movement slows down. Value in range ]0,1[
      */
     public StochasticRelaxation(double temperatureAlpha) throws IllegalArgumentException{
+        this(temperatureAlpha, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param temperatureAlpha governs how quickly the random movement slows down. Value in range ]0,1[
+     * @param threads          number of worker threads, at least 1
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    public StochasticRelaxation(double temperatureAlpha, int threads) throws IllegalArgumentException{
         if(temperatureAlpha <= 0 || temperatureAlpha >= 1)
             throw new IllegalArgumentException("StochasticRelaxation(): temperatureAlpha is not within acceptable range: ]0, 1[");
-    	this.temperatureAlpha = temperatureAlpha;
+        if (threads < 1)
+            throw new IllegalArgumentException("StochasticRelaxation(): threads must be at least 1");
+        this.temperatureAlpha = temperatureAlpha;
+        this.threads = threads;
     }
 
     /**
@@ -54,63 +99,127 @@ public class StochasticRelaxation implements ClusteringAlgorithm {
      */
     @Override
     public void cluster(Dataset dataset, int maxIterations) {
-        double[] variances = dataset.variances();
-        double lastDistortion = Double.POSITIVE_INFINITY;
-        for (int iteration = 1; iteration <= maxIterations; iteration++) {
-            double distortion = dataset.partition();
-            if (distortion <= lastDistortion && (lastDistortion - distortion) / distortion < EXIT_EPSILON) {
-                break;
-            }
-            lastDistortion = distortion;
-            updateCentroids(dataset);
-            performPerturbations(iteration, variances, dataset);
-        }
-        new KMeans().cluster(dataset); // make sure the clusters are stable
+        cluster(dataset, maxIterations, StopCondition.NEVER);
     }
 
     /**
-     * Updates centroids based on average vectors of partitions.
-     *
-     * Differs from standard k-means: If a cluster is left without
-     * training vectors, its centroid is relocated.
-     */
-    private void updateCentroids(Dataset dataset) {
-        double[][] sums = new double[dataset.centroids.length][dataset.data[0].length];
-        int[] numberOfPoints = new int[dataset.centroids.length];
-        for (int i = 0; i < dataset.data.length; i++) {
-            for (int d = 0; d < dataset.data[i].length; d++) {
-                sums[dataset.partitions[i]][d] += dataset.data[i][d];
-            }
-            numberOfPoints[dataset.partitions[i]]++;
+     * Iterates Stochastic relaxation until convergence or until stopped
+     */
+    @Override
+    public void cluster(Dataset dataset, StopCondition stop) {
+        cluster(dataset, Integer.MAX_VALUE, stop);
+    }
+
+    /**
+     * Iterates Stochastic relaxation for set amount of maximum iterations or until stopped.
+     * The perturbations can make the error worse, so the centroids with the lowest error are
+     * kept; when stopped, the data is partitioned with them and the final k-means is skipped.
+     */
+    @Override
+    public void cluster(Dataset dataset, int maxIterations, StopCondition stop) {
+        OperationCounters previousCounters = dataset.counters;
+        dataset.counters = listener != null || ClusteringEvents.isIterationRecorded()
+                ? new OperationCounters() : null;
+        try {
+            run(dataset, maxIterations, stop);
+        } finally {
+            dataset.counters = previousCounters;
         }
-        for (int c = 0; c < dataset.centroids.length; c++) {
-            if (numberOfPoints[c] == 0) {
-                // cluster has no training vectors; re-assign centroid
-                dataset.centroids[c] = Arrays.copyOf(dataset.data[(int) (Math.random() * dataset.data.length)], dataset.data[0].length);
-            } else {
-                for (int d = 0; d < sums[c].length; d++) {
-                    sums[c][d] = sums[c][d] / numberOfPoints[c];
+    }
+
+    private void run(Dataset dataset, int maxIterations, StopCondition stop) {
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            double[] variances = dataset.variances();
+            double lastDistortion = Double.POSITIVE_INFINITY;
+            double bestDistortion = Double.POSITIVE_INFINITY;
+            double[][] bestCentroids = null;
+            iterations = 0;
+            for (int iteration = 1; iteration <= maxIterations; iteration++) {
+                if (stop.isMet()) {
+                    if (bestCentroids != null) {
+                        dataset.centroids = bestCentroids;
+                        dataset.partition(pool);
+                    }
+                    return;
+                }
+                iterations = iteration;
+                ClusteringEvents.Iteration event = ClusteringEvents.iteration();
+                double distortion = dataset.partition(pool);
+                if (distortion < bestDistortion) {
+                    bestDistortion = distortion;
+                    bestCentroids = ClusteringState.copyOf(dataset.centroids);
+                }
+                boolean converged = distortion <= lastDistortion
+                        && (lastDistortion - distortion) / distortion < EXIT_EPSILON;
+                if (!converged) {
+                    lastDistortion = distortion;
+                    dataset.updateCentroids();
+                    performPerturbations(iteration, variances, dataset, pool);
+                    dataset.regroupIfDue();
                 }
-                dataset.centroids[c] = sums[c];
+                if (dataset.counters != null) {
+                    long changedLabels = dataset.counters.takeChangedLabels();
+                    long distanceComputations = dataset.counters.takeDistanceComputations();
+                    event.end(this, dataset, iteration, distanceComputations, distortion);
+                    if (listener != null) {
+                        listener.iterationDone(new IterationEvent(this, iteration, distortion,
+                                changedLabels, distanceComputations, -1, -1, temperature(iteration)));
+                    }
+                }
+                if (converged)
+                    break;
             }
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
         }
+        FastKMeans fastKMeans = new FastKMeans(); // make sure the clusters are stable
+        fastKMeans.setListener(listener);
+        fastKMeans.cluster(dataset, stop);
+    }
+
+    @Override
+    public int getIterations() {
+        return iterations;
     }
 
     /**
-     * Moves code vectors randomly.
+     * The listener is also passed on to the final fast k-means, so it receives the iterations
+     * of both
      */
-    private void performPerturbations(int iteration, double[] variances, Dataset dataset) {
+    @Override
+    public void setListener(IterationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Moves code vectors randomly. Each block of centroids is moved with its own random number
+     * stream.
+     */
+    private void performPerturbations(int iteration, double[] variances, Dataset dataset, ExecutorService pool) {
         double temperature = temperature(iteration);
-        double[] adjustedVariance = new double[dataset.data[0].length];
+        double[] adjustedVariance = new double[dataset.storage.dimensions()];
         for (int d = 0; d < adjustedVariance.length; d++) {
             adjustedVariance[d] = variances[d] * temperature;
         }
-        for (int c = 0; c < dataset.centroids.length; c++) {
-            for (int d = 0; d < dataset.centroids[c].length; d++) {
-                double random = ((-0.5 + Math.random()) * Math.sqrt(12 * adjustedVariance[d]));
-                dataset.centroids[c][d] += random;
-            }
+        double[][] centroids = dataset.centroids;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < centroids.length; from += PERTURBATION_BLOCK_SIZE) {
+            int first = from;
+            int last = Math.min(from + PERTURBATION_BLOCK_SIZE, centroids.length);
+            SplittableRandom stream = dataset.random.split();
+            tasks.add(() -> {
+                for (int c = first; c < last; c++) {
+                    for (int d = 0; d < centroids[c].length; d++) {
+                        double random = ((-0.5 + stream.nextDouble()) * Math.sqrt(12 * adjustedVariance[d]));
+                        centroids[c][d] += random;
+                    }
+                }
+                return null;
+            });
         }
+        Dataset.invokeAll(pool, tasks);
     }
 
     /**
@@ -0,0 +1,74 @@
+/**
+ * Tells a clustering algorithm to stop before it has finished: when a deadline passes, when
+ * the run is cancelled from another thread, or both. The algorithms check the condition
+ * between iterations, so a run stops within one iteration of the condition being met, and
+ * leaves the best solution found so far in the dataset.
+ *
+ * A condition can be shared by several runs, for example all repeats of
+ * {@link Clustering#runMultiple(int, StopCondition)}.
+ */
+public final class StopCondition {
+
+    /**
+     * condition that is never met; cannot be cancelled
+     */
+    public static final StopCondition NEVER = new StopCondition(false, 0);
+
+    /**
+     * whether {@link #deadline} is used
+     */
+    private final boolean hasDeadline;
+    /**
+     * {@link System#nanoTime()} at which the condition is met
+     */
+    private final long deadline;
+    /**
+     * set by {@link #cancel()} from any thread
+     */
+    private volatile boolean cancelled = false;
+
+    /**
+     * Condition without a deadline, met only when cancelled
+     */
+    public StopCondition() {
+        this(false, 0);
+    }
+
+    private StopCondition(boolean hasDeadline, long deadline) {
+        this.hasDeadline = hasDeadline;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Condition met when the given time has passed from now, or when cancelled
+     *
+     * @param milliseconds time limit
+     * @return new condition
+     * @throws IllegalArgumentException if the time limit is negative
+     */
+    public static StopCondition within(long milliseconds) throws IllegalArgumentException {
+        if (milliseconds < 0)
+            throw new IllegalArgumentException("within(): Time limit cannot be negative");
+        return new StopCondition(true, System.nanoTime() + milliseconds * 1000000);
+    }
+
+    /**
+     * Stops the runs that check this condition at their next check. Can be called from any
+     * thread.
+     *
+     * @throws IllegalStateException if this is {@link #NEVER}
+     */
+    public void cancel() throws IllegalStateException {
+        if (this == NEVER)
+            throw new IllegalStateException("cancel(): Cannot cancel StopCondition.NEVER");
+        cancelled = true;
+    }
+
+    /**
+     * @return true if the run was cancelled or the deadline has passed
+     */
+    public boolean isMet() {
+        // the difference is compared so that the nanoTime values may overflow
+        return cancelled || (hasDeadline && System.nanoTime() - deadline >= 0);
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Numeric formats for storing the data matrix.
+ *
+ * All of the bundled datasets contain integer coordinates, which can be stored as 32-bit or
+ * 16-bit integers without loss. Storing them as doubles takes 2-4 times more memory and memory
+ * bandwidth.
+ */
+public enum StoragePrecision {
+
+    /**
+     * 64-bit floating point, no loss
+     */
+    DOUBLE,
+    /**
+     * 32-bit floating point; values are rounded to the nearest float
+     */
+    FLOAT,
+    /**
+     * 32-bit integers; only for integer valued data in the int range
+     */
+    INT32,
+    /**
+     * 16-bit integers; only for integer valued data in the short range
+     */
+    INT16,
+    /**
+     * The most compact of the above formats that stores the data without loss
+     */
+    AUTO;
+
+    /**
+     * Stores the data in this format
+     *
+     * @param source data to be stored
+     * @return new storage; the source itself if it already has the requested format
+     * @throws IllegalArgumentException if the data cannot be stored in an integer format
+     */
+    public DataStorage store(DataStorage source) throws IllegalArgumentException {
+        StoragePrecision precision = this == AUTO ? detect(source) : this;
+        if (source.precision() == precision)
+            return source;
+        switch (precision) {
+            case FLOAT:
+                return new FloatStorage(source);
+            case INT32:
+                return new IntStorage(source);
+            case INT16:
+                return new ShortStorage(source);
+            default:
+                double[][] rows = new double[source.size()][];
+                for (int i = 0; i < rows.length; i++)
+                    rows[i] = source.getRow(i);
+                return new DoubleStorage(rows);
+        }
+    }
+
+    /**
+     * Finds the most compact format that stores the data without loss
+     *
+     * @param source data to be stored
+     * @return INT16, INT32, FLOAT or DOUBLE
+     */
+    public static StoragePrecision detect(DataStorage source) {
+        boolean isShort = true;
+        boolean isInt = true;
+        boolean isFloat = true;
+        for (int i = 0; i < source.size(); i++) {
+            for (int d = 0; d < source.dimensions(); d++) {
+                double value = source.get(i, d);
+                if (value != Math.rint(value) || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                    isInt = false;
+                    isShort = false;
+                } else if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+                    isShort = false;
+                }
+                if ((float) value != value)
+                    isFloat = false;
+            }
+            if (!isInt && !isFloat)
+                return DOUBLE;
+        }
+        return isShort ? INT16 : isInt ? INT32 : isFloat ? FLOAT : DOUBLE;
+    }
+}
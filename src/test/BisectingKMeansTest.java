@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the bisecting k-means algorithm
+ */
+class BisectingKMeansTest {
+
+    @Test
+    void assignBeforeRun() {
+        assertThrows(IllegalStateException.class, () -> new BisectingKMeans(false).assign(new double[2]));
+    }
+
+    @Test
+    void clusterTree() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        BisectingKMeans algorithm = new BisectingKMeans(false);
+        algorithm.cluster(set);
+
+        assertEquals(15, set.centroids.length);
+        assertTrue(algorithm.getIterations() > 0);
+        int[] sizes = set.clusterSizes();
+        for (int size : sizes)
+            assertTrue(size > 0);
+        // the converged splits route every vector to its own cluster
+        for (int i = 0; i < set.getNumberOfVectors(); i++)
+            assertEquals(set.partitions[i], algorithm.assign(set.data[i]));
+    }
+
+    @Test
+    void withoutPolish() throws IOException {
+        // fast k-means from the unpolished result improves it only moderately
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        new BisectingKMeans(false).cluster(set);
+        Dataset copy = set.copy();
+        new FastKMeans().cluster(copy);
+        assertTrue(set.MSE() < copy.MSE() * 1.5);
+    }
+
+    @Test
+    void polish() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/bridge.txt", 256);
+        assertTimeoutPreemptively(Duration.ofMillis(10000), () -> new BisectingKMeans().cluster(set));
+        // the result is a converged k-means solution
+        double[][] centroids = set.getCentroids();
+        new KMeans().cluster(set);
+        assertTrue(Arrays.deepEquals(centroids, set.centroids));
+    }
+
+    @Test
+    void betterThanFastKMeans() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/bridge.txt", 256);
+        new BisectingKMeans().cluster(set);
+        Dataset random = new Dataset("src/test/testdata/bridge.txt", 256);
+        new FastKMeans().cluster(random);
+        assertTrue(set.MSE() < random.MSE() * 1.1);
+    }
+
+    @Test
+    void identicalVectors() {
+        // only three distinct vectors for five clusters: the leaves cannot be split further
+        double[][] data = new double[30][];
+        for (int i = 0; i < data.length; i++)
+            data[i] = new double[]{i % 3, 0};
+        Dataset set = new Dataset(data, 5);
+        new BisectingKMeans(false).cluster(set);
+        assertEquals(5, set.centroids.length);
+        assertEquals(0, set.TSE());
+    }
+
+    @Test
+    void weightedVectors() {
+        // weighted vectors are split by weight
+        Dataset weighted = new Dataset(new DoubleStorage(new double[][]{{0}, {1}, {10}, {11}}),
+                new double[]{1, 3, 1, 1}, 2);
+        new BisectingKMeans(false).cluster(weighted);
+        double[][] centroids = weighted.getCentroids();
+        Arrays.sort(centroids, (a, b) -> Double.compare(a[0], b[0]));
+        assertArrayEquals(new double[]{0.75}, centroids[0]);
+        assertArrayEquals(new double[]{10.5}, centroids[1]);
+    }
+}
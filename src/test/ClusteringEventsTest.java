@@ -0,0 +1,111 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the JFR events of the clustering phases
+ */
+class ClusteringEventsTest {
+
+    @Test
+    void jfrOnThisRuntime() {
+        assertTrue(ClusteringEvents.partition() instanceof JfrClusteringEvents.Partition);
+    }
+
+    @Test
+    void repeats() throws IOException {
+        Clustering clustering = new Clustering("src/test/testdata/s2.txt", 15, 0, 1, null, new KMeans());
+        int n = clustering.dataset.getNumberOfVectors();
+        List<RecordedEvent> repeats = named(record(() -> clustering.runMultiple(2), "clustering.Repeat"), "clustering.Repeat");
+        assertEquals(2, repeats.size());
+        for (int r = 0; r < repeats.size(); r++) {
+            RecordedEvent repeat = repeats.get(r);
+            assertEquals("KMeans", repeat.getString("algorithm"));
+            assertEquals(r + 1, repeat.getInt("repeat"));
+            assertEquals(n, repeat.getInt("vectors"));
+            assertEquals(15, repeat.getInt("clusters"));
+            assertEquals(2, repeat.getInt("dimensions"));
+            assertTrue(repeat.getInt("iterations") > 0);
+        }
+        assertEquals(repeats.get(1).getInt("iterations"), clustering.algorithm.getIterations());
+    }
+
+    @Test
+    void kMeans() throws IOException {
+        // k-means partitions and updates the centroids once per iteration
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.initializeRandomCentroids();
+        int n = set.getNumberOfVectors();
+        KMeans kMeans = new KMeans();
+        List<RecordedEvent> events = record(() -> kMeans.cluster(set),
+                "clustering.Partition", "clustering.UpdateCentroids", "clustering.Iteration");
+        List<RecordedEvent> iterations = named(events, "clustering.Iteration");
+        assertEquals(kMeans.getIterations(), iterations.size());
+        for (RecordedEvent iteration : iterations) {
+            assertEquals((long) n * 15, iteration.getLong("distanceComputations"));
+            assertTrue(iteration.getDouble("TSE") > 0);
+        }
+        assertEquals(iterations.size(), named(events, "clustering.Partition").size());
+        assertEquals(iterations.size(), named(events, "clustering.UpdateCentroids").size());
+        for (RecordedEvent partition : named(events, "clustering.Partition"))
+            assertEquals((long) n * 15, partition.getLong("distanceComputations"));
+        assertNull(set.counters);
+    }
+
+    @Test
+    void fastKMeans() throws IOException {
+        // fast k-means reports the distances of its partial searches
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.initializeRandomCentroids();
+        List<RecordedEvent> events = record(() -> new FastKMeans().cluster(set),
+                "clustering.Partition", "clustering.Iteration");
+        List<RecordedEvent> iterations = named(events, "clustering.Iteration");
+        List<RecordedEvent> partitions = named(events, "clustering.Partition");
+        assertFalse(iterations.isEmpty());
+        assertEquals(iterations.size(), partitions.size());
+        long partitionDistances = 0;
+        for (RecordedEvent partition : partitions)
+            partitionDistances += partition.getLong("distanceComputations");
+        long iterationDistances = 0;
+        for (RecordedEvent iteration : iterations)
+            iterationDistances += iteration.getLong("distanceComputations");
+        // the first iteration also recalculated the distances to the current centroids
+        assertEquals(partitionDistances + set.getNumberOfVectors(), iterationDistances);
+        assertTrue(partitionDistances < (long) set.getNumberOfVectors() * 16 * iterations.size());
+    }
+
+    /**
+     * Runs the action while recording the given events
+     *
+     * @return the recorded events
+     */
+    private static List<RecordedEvent> record(Runnable action, String... names) throws IOException {
+        Path file = Files.createTempFile("clustering", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : names)
+                recording.enable(name);
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name))
+                .sorted(Comparator.comparing(RecordedEvent::getStartTime)).collect(Collectors.toList());
+    }
+}
@@ -47,4 +47,19 @@ class ClusteringTest {
         assertTrue(Math.abs(1 - bestTSE / km.dataset.TSE()) < 0.1);
     }
 
+    @Test
+    void seed() {
+        // the same seed gives the same result
+        double[][][] results = new double[2][][];
+        for (int i = 0; i < results.length; i++) {
+            Clustering rs = new Clustering("src/test/testdata/s2.txt", 15, 0, 1234, null, new RandomSwap());
+            rs.runMultiple(3);
+            results[i] = rs.dataset.centroids;
+        }
+        assertArrayEquals(results[0], results[1]);
+        Clustering sampled = new Clustering("src/test/testdata/s2.txt", 15, 1000, 1234, null, new KMeans());
+        assertArrayEquals(sampled.dataset.getData(),
+                new Clustering("src/test/testdata/s2.txt", 15, 1000, 1234, null, new KMeans()).dataset.getData());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the coreset construction
+ */
+class CoresetTest {
+
+    @Test
+    void build() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/birch2.txt", 100);
+        Dataset coreset = new Coreset(2000).build(set);
+        assertTrue(coreset.getNumberOfVectors() <= 2000);
+        assertEquals(100, coreset.getNumberOfClusters());
+        assertEquals(set.getTotalWeight(), coreset.getTotalWeight(), set.getTotalWeight() * 0.1);
+
+        // the cost of any centroids is approximated
+        new FastKMeans().cluster(set);
+        coreset.centroids = set.getCentroids();
+        assertEquals(set.partition(), coreset.partition(), set.partition() * 0.2);
+        set.initializeRandomCentroids();
+        coreset.centroids = set.getCentroids();
+        assertEquals(set.partition(), coreset.partition(), set.partition() * 0.2);
+
+        // coresets of weighted data
+        set.deduplicate();
+        assertEquals(set.getTotalWeight(), new Coreset(2000).build(set).getTotalWeight(), set.getTotalWeight() * 0.1);
+
+        assertThrows(IllegalArgumentException.class, () -> new Coreset(0));
+        assertThrows(IllegalArgumentException.class, () -> new Coreset(10).build(set));
+    }
+
+    @Test
+    void clusterCoreset() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        new RandomSwap().cluster(set, 200);
+        double fullMSE = set.MSE();
+
+        set.initializeRandomCentroids();
+        new CoresetClustering(new RandomSwap(), 1000).cluster(set, 200);
+        assertEquals(15, set.centroids.length);
+        assertTrue(set.MSE() < fullMSE * 1.2);
+    }
+
+    @Test
+    void refine() throws IOException {
+        // refining is a single k-means iteration on the full data
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        Dataset copy = set.copy();
+        double[][] centroids = set.getCentroids();
+        Coreset.refine(set, centroids);
+        new KMeans().cluster(copy, 1);
+        assertArrayEquals(copy.getPartitions(), set.getPartitions());
+        assertEquals(copy.TSE(), set.TSE());
+        assertNotSame(centroids[0], set.centroids[0]);
+    }
+}
@@ -0,0 +1,177 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the data storage formats
+ */
+class DataStorageTest {
+
+    private final double EPSILON = 0.00000000001;
+
+    private static final double[][] INTEGER_DATA = new double[][]{
+            {845, -636, 7},
+            {812, 643, -20},
+            {-32768, 32767, 0},
+            {0, 0, 0}
+    };
+
+    /**
+     * @return the data in all formats that can store it without loss
+     */
+    private static DataStorage[] allFormats(double[][] data) {
+        DoubleStorage source = new DoubleStorage(data);
+        return new DataStorage[]{source, new FloatStorage(source), new IntStorage(source), new ShortStorage(source),
+                new OffHeapStorage(source), new OffHeapStorage(source, 3)};
+    }
+
+    @Test
+    void consistency() {
+        double[] point = new double[]{1.5, -2.25, 100};
+        for (DataStorage storage : allFormats(INTEGER_DATA)) {
+            assertEquals(INTEGER_DATA.length, storage.size());
+            assertEquals(3, storage.dimensions());
+            double[] sum = new double[3];
+            double totalNorm = 0;
+            for (int i = 0; i < storage.size(); i++) {
+                assertArrayEquals(INTEGER_DATA[i], storage.getRow(i));
+                DoubleBuffer view = storage.rowView(i);
+                assertEquals(3, view.remaining());
+                assertTrue(view.isReadOnly());
+                for (int d = 0; d < 3; d++)
+                    assertEquals(INTEGER_DATA[i][d], view.get(d));
+                for (int d = 0; d < 3; d++)
+                    assertEquals(INTEGER_DATA[i][d], storage.get(i, d));
+                assertEquals(Dataset.distSq(INTEGER_DATA[i], point), storage.distSq(i, point), EPSILON);
+                for (int j = 0; j < storage.size(); j++)
+                    assertEquals(Dataset.distSq(INTEGER_DATA[i], INTEGER_DATA[j]), storage.distSq(i, j));
+                totalNorm += storage.addTo(i, sum);
+            }
+            assertArrayEquals(new double[]{845 + 812 - 32768, -636 + 643 + 32767, -13}, sum);
+            double expectedNorm = 0;
+            for (double[] v : INTEGER_DATA)
+                expectedNorm += Dataset.distSq(v, new double[3]);
+            assertEquals(expectedNorm, totalNorm);
+            for (int i = 0; i < storage.size(); i++)
+                totalNorm -= storage.subtractFrom(i, sum);
+            assertArrayEquals(new double[3], sum);
+            assertEquals(0, totalNorm);
+
+            // the getter returns a copy
+            storage.getRow(0)[0] = 1;
+            assertEquals(845, storage.get(0, 0));
+        }
+    }
+
+    @Test
+    void select() {
+        for (DataStorage storage : allFormats(INTEGER_DATA)) {
+            DataStorage selected = storage.select(new int[]{3, 0, 0});
+            assertEquals(storage.precision(), selected.precision());
+            assertEquals(3, selected.size());
+            assertArrayEquals(INTEGER_DATA[3], selected.getRow(0));
+            assertArrayEquals(INTEGER_DATA[0], selected.getRow(1));
+            assertArrayEquals(INTEGER_DATA[0], selected.getRow(2));
+        }
+        // double rows are copied
+        DoubleStorage storage = new DoubleStorage(INTEGER_DATA);
+        assertNotSame(INTEGER_DATA[0], storage.select(new int[]{0}).rows[0]);
+    }
+
+    @Test
+    void exactIntegerDistances() {
+        // rounding each squared difference separately would lose the small terms
+        double a = (1 << 27) + 1;
+        double[][] data = new double[][]{{a, 1, 1}, {0, 0, 0}};
+        IntStorage storage = new IntStorage(new DoubleStorage(data));
+        long exact = (long) a * (long) a + 2;
+        assertEquals((double) exact, storage.distSq(0, 1));
+        assertEquals((double) exact, storage.addTo(0, new double[3]));
+        assertNotEquals((double) exact, Dataset.distSq(data[0], data[1]));
+        // large value range switches to double arithmetic instead of overflowing
+        double[][] wide = new double[][]{{Integer.MAX_VALUE, Integer.MIN_VALUE, 1, 1, 1}, new double[5]};
+        storage = new IntStorage(new DoubleStorage(wide));
+        assertEquals(Dataset.distSq(wide[0], wide[1]), storage.distSq(0, 1));
+        assertEquals(Dataset.distSq(wide[0], wide[1]), storage.addTo(0, new double[5]));
+    }
+
+    @Test
+    void offHeap() throws IOException {
+        // rows split over several buffers
+        double[][] data = new double[10][];
+        for (int i = 0; i < data.length; i++)
+            data[i] = new double[]{i, -i * 0.5, Math.sqrt(i)};
+        OffHeapStorage storage = new OffHeapStorage(new DoubleStorage(data), 4);
+        for (int i = 0; i < data.length; i++) {
+            assertArrayEquals(data[i], storage.getRow(i));
+            assertEquals(Dataset.distSq(data[i], data[9 - i]), storage.distSq(i, 9 - i));
+        }
+        DataStorage selected = storage.select(new int[]{9, 3, 4});
+        assertArrayEquals(data[9], selected.getRow(0));
+        assertArrayEquals(data[4], selected.getRow(2));
+
+        // selecting into a spare storage overwrites its buffers instead of allocating new ones
+        OffHeapStorage spare = storage.select(new int[]{0, 1, 2});
+        OffHeapStorage reused = storage.select(new int[]{5, 6, 7}, spare);
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(data[5 + i], reused.getRow(i));
+            assertArrayEquals(data[5 + i], spare.getRow(i));
+        }
+        // a spare of a different shape is not used
+        OffHeapStorage other = storage.select(new int[]{1, 2}, spare);
+        assertArrayEquals(data[1], other.getRow(0));
+        assertArrayEquals(data[5], spare.getRow(0));
+
+        // binary file round trip
+        File file = File.createTempFile("storage", ".bin");
+        try {
+            OffHeapStorage.write(storage, new int[]{2, 7}, file);
+            assertEquals(OffHeapStorage.HEADER_BYTES + 2 * 3 * 8, file.length());
+            OffHeapStorage mapped = OffHeapStorage.map(file);
+            assertEquals(2, mapped.size());
+            assertEquals(3, mapped.dimensions());
+            assertArrayEquals(data[2], mapped.getRow(0));
+            assertArrayEquals(data[7], mapped.getRow(1));
+
+            OffHeapStorage.write(storage, null, file);
+            mapped = OffHeapStorage.map(file);
+            for (int i = 0; i < data.length; i++)
+                assertArrayEquals(data[i], mapped.getRow(i));
+
+            Files.write(file.toPath(), new byte[]{1, 0, 0, 0, 1, 0, 0, 0, 0});
+            assertThrows(IllegalArgumentException.class, () -> OffHeapStorage.map(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void detect() {
+        assertEquals(StoragePrecision.INT16, StoragePrecision.detect(new DoubleStorage(INTEGER_DATA)));
+        assertEquals(StoragePrecision.INT32, StoragePrecision.detect(new DoubleStorage(new double[][]{{40000}})));
+        assertEquals(StoragePrecision.FLOAT, StoragePrecision.detect(new DoubleStorage(new double[][]{{0.5, 1e10}})));
+        assertEquals(StoragePrecision.DOUBLE, StoragePrecision.detect(new DoubleStorage(new double[][]{{0.1}})));
+
+        DataStorage source = new DoubleStorage(INTEGER_DATA);
+        assertEquals(StoragePrecision.INT16, StoragePrecision.AUTO.store(source).precision());
+        assertSame(source, StoragePrecision.DOUBLE.store(source));
+    }
+
+    @Test
+    void invalidConversions() {
+        DataStorage fractional = new DoubleStorage(new double[][]{{1.5}});
+        assertThrows(IllegalArgumentException.class, () -> new IntStorage(fractional));
+        assertThrows(IllegalArgumentException.class, () -> new ShortStorage(fractional));
+        DataStorage large = new DoubleStorage(new double[][]{{40000}});
+        assertThrows(IllegalArgumentException.class, () -> new ShortStorage(large));
+        DataStorage huge = new DoubleStorage(new double[][]{{1e10}});
+        assertThrows(IllegalArgumentException.class, () -> new IntStorage(huge));
+        // float storage rounds
+        assertEquals((float) 0.1, new FloatStorage(new DoubleStorage(new double[][]{{0.1}})).get(0, 0));
+    }
+}
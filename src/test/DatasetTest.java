@@ -1,7 +1,17 @@
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -90,6 +100,44 @@ class DatasetTest {
         assertFalse(Arrays.deepEquals(set.getData(), data));
     }
 
+    @Test
+    void views() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.loadRealCentroids("src/test/testdata/s2-centroids.txt");
+        double[][] data = set.getData();
+        set.sortBySpaceFillingCurve(SpaceFillingCurve.HILBERT);
+        int[] partitions = set.getPartitions();
+
+        // views follow the original order
+        DataStorage view = set.getDataView();
+        assertEquals(data.length, view.size());
+        int i = 0;
+        for (DoubleBuffer vector : set.getVectorViews()) {
+            assertArrayEquals(data[i], view.getRow(i));
+            assertEquals(data[i][1], vector.get(1));
+            assertEquals(data[i][0], set.getVectorView(i).get(0));
+            assertEquals(partitions[i], set.getPartition(i));
+            i++;
+        }
+        assertEquals(data.length, i);
+
+        // views are read-only and not copied
+        DoubleBuffer vector = set.getVectorView(0);
+        assertThrows(ReadOnlyBufferException.class, () -> vector.put(0, 1));
+        set.data[set.row(0)][0]++;
+        assertEquals(data[0][0] + 1, vector.get(0));
+        DoubleBuffer centroid = set.getCentroidView(3);
+        assertEquals(2, centroid.remaining());
+        assertThrows(ReadOnlyBufferException.class, () -> centroid.put(0, 1));
+        set.centroids[3][1]++;
+        assertEquals(set.centroids[3][1], centroid.get(1));
+        assertEquals(S2_REAL_CENTROIDS[14][0], set.getRealCentroidView(14).get(0));
+
+        // the data view is a snapshot of the matrix
+        set.groupByCluster();
+        assertEquals(data[5][1], view.get(5, 1));
+    }
+
     @Test
     void getPartitions() throws IOException {
         Dataset set = new Dataset("src/test/testdata/s2-truncated.txt", 5);
@@ -145,6 +193,41 @@ class DatasetTest {
         assertFalse(Arrays.deepEquals(set.centroids, set2.centroids));
     }
 
+    @Test
+    void saveAndRestoreState() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        ClusteringState state = set.saveState();
+        double[][] centroids = set.getCentroids();
+        int[] partitions = set.getPartitions();
+        double TSE = set.TSE();
+
+        // the snapshot must not change with the dataset
+        new KMeans().cluster(set);
+        assertTrue(Arrays.deepEquals(centroids, state.getCentroids()));
+        assertArrayEquals(partitions, state.getPartitions());
+
+        // restoring brings back the solution without re-partitioning
+        set.restoreState(state);
+        assertTrue(Arrays.deepEquals(centroids, set.centroids));
+        assertArrayEquals(partitions, set.partitions);
+        assertEquals(TSE, set.TSE());
+
+        // state can be restored more than once
+        set.centroids[0][0]++;
+        set.restoreState(state);
+        assertTrue(Arrays.deepEquals(centroids, set.centroids));
+
+        // a copy shares the data matrix, so the state can be restored to it as well
+        Dataset copy = set.copy();
+        copy.initializeRandomCentroids();
+        copy.restoreState(state);
+        assertEquals(TSE, copy.TSE());
+
+        // state of a different sized dataset
+        Dataset other = new Dataset("src/test/testdata/s2-truncated.txt", 5);
+        assertThrows(IllegalArgumentException.class, () -> other.restoreState(state));
+    }
+
     @Test
     void loadRealCentroids() throws IOException {
         Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
@@ -177,6 +260,33 @@ class DatasetTest {
         checkPartitioning(set);
     }
 
+    @Test
+    void parallelPartition() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/birch2.txt", 100);
+        set.initializeRandomCentroids();
+        Dataset parallel = set.copy();
+        double TSE = set.partition();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            double parallelTSE = parallel.partition(pool);
+            checkPartitioning(parallel);
+            assertArrayEquals(set.getPartitions(), parallel.getPartitions());
+            assertEquals(TSE, parallelTSE, TSE * 1e-9);
+            assertArrayEquals(set.clusterSizes(), parallel.clusterSizes());
+            for (int c = 0; c < 100; c++)
+                assertEquals(set.clusterSSE(c), parallel.clusterSSE(c), 1e-9 * TSE);
+
+            // the blocks do not depend on the threads
+            Dataset inline = set.copy();
+            assertEquals(parallelTSE, inline.partition(null));
+            inline.updateCentroids();
+            parallel.updateCentroids();
+            assertArrayEquals(inline.centroids, parallel.centroids);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     /**
      * Checks dataset's partitioning. Each data vector must be partitioned to the
      * nearest centroid's cluster.
@@ -225,6 +335,27 @@ class DatasetTest {
         // without centroid initialization
         set = new Dataset("src/test/testdata/s2.txt", 15);
         set.updateCentroids();
+
+        // empty cluster is relocated to the vector with the largest error
+        double[][] vectors = new double[][]{{0, 0}, {1, 0}, {10, 0}, {11, 0}};
+        set = new Dataset(vectors, 3);
+        set.centroids = new double[][]{{0, 0}, {100, 100}, {10.5, 0}};
+        set.partition();
+        assertEquals(0, set.clusterSizes()[1]);
+        set.updateCentroids();
+        assertArrayEquals(new double[]{0, 0}, set.centroids[0]);
+        assertArrayEquals(new double[]{1, 0}, set.centroids[1]);
+        assertArrayEquals(new double[]{10.5, 0}, set.centroids[2]);
+        assertEquals(1, set.partitions[1]);
+        assertArrayEquals(new int[]{1, 1, 2}, set.clusterSizes());
+        assertEquals(0.5, set.TSE());
+
+        // duplicate vectors: nothing to relocate, but the centroid must not become NaN
+        set = new Dataset(new double[][]{{1, 1}, {1, 1}, {1, 1}}, 2);
+        set.centroids = new double[][]{{1, 1}, {1, 1}};
+        set.partition();
+        set.updateCentroids();
+        assertArrayEquals(new double[]{1, 1}, set.centroids[1]);
     }
 
     @Test
@@ -247,6 +378,432 @@ class DatasetTest {
         assertEquals(0, set.data.length);
     }
 
+    @Test
+    void sample() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        double[][] centroids = set.getCentroids();
+        int[] partitions = set.getPartitions();
+
+        Dataset sample = set.sample(1000);
+        assertEquals(1000, sample.getNumberOfVectors());
+        assertEquals(15, sample.getNumberOfClusters());
+        assertArrayEquals(centroids, sample.centroids);
+        assertNotSame(set.centroids[0], sample.centroids[0]);
+        checkPartitioning(sample);
+        // the original is not modified
+        assertArrayEquals(centroids, set.centroids);
+        assertArrayEquals(partitions, set.partitions);
+        assertEquals(5000, set.getNumberOfVectors());
+
+        // weights are kept
+        set.deduplicate();
+        assertEquals(set.getNumberOfVectors(), set.sample(set.getNumberOfVectors()).getTotalWeight());
+        Dataset weighted = new Dataset(new double[][]{{0}, {1}, {2}}, 2);
+        weighted = new Dataset(weighted.storage, new double[]{3, 3, 3}, 2);
+        assertEquals(6, weighted.sample(2).getTotalWeight());
+
+        assertThrows(IllegalArgumentException.class, () -> set.sample(14));
+        assertThrows(IllegalArgumentException.class, () -> set.sample(5001));
+    }
+
+    @Test
+    void sampledLoading() throws IOException {
+        double[][] s2 = new Dataset("src/test/testdata/s2.txt", 15).getData();
+        HashSet<List<Double>> vectors = new HashSet<>();
+        for (double[] v : s2)
+            vectors.add(Arrays.asList(v[0], v[1]));
+
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15, 1000);
+        assertEquals(1000, set.getNumberOfVectors());
+        HashSet<List<Double>> sampled = new HashSet<>();
+        for (double[] v : set.getData()) {
+            assertTrue(vectors.contains(Arrays.asList(v[0], v[1])));
+            sampled.add(Arrays.asList(v[0], v[1]));
+        }
+        assertEquals(1000, sampled.size()); // no line is sampled twice
+        checkPartitioning(set);
+
+        // the whole file is loaded if it is smaller than the sample
+        set = new Dataset("src/test/testdata/s2-truncated.txt", 5, 1000);
+        assertTrue(Arrays.deepEquals(S2_TRUNCATED_DATA, set.data));
+
+        // every line is sampled about equally often
+        File text = File.createTempFile("dataset", ".txt");
+        File binary = File.createTempFile("dataset", ".bin");
+        try {
+            try (FileWriter writer = new FileWriter(text)) {
+                for (int i = 0; i < 10; i++)
+                    writer.write(i + "\n");
+            }
+            new Dataset(text.getPath(), 1).writeBinary(binary.getPath());
+            for (File file : new File[]{text, binary}) {
+                int[] counts = new int[10];
+                for (int round = 0; round < 3000; round++) {
+                    for (double[] v : new Dataset(file.getPath(), 1, 3).getData())
+                        counts[(int) v[0]]++;
+                }
+                for (int count : counts)
+                    assertEquals(900, count, 150);
+            }
+        } finally {
+            text.delete();
+            binary.delete();
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new Dataset("src/test/testdata/s2.txt", 15, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Dataset("src/test/testdata/s2.txt", 15, 14));
+        assertThrows(IllegalArgumentException.class, () -> new Dataset("src/test/testdata/s2-nonnumerical.txt", 1, 100000));
+        assertThrows(IOException.class, () -> new Dataset("src/test/testdata/doesntexist.txt", 15, 100));
+    }
+
+    @Test
+    void seed() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        Dataset other = new Dataset("src/test/testdata/s2.txt", 15);
+        set.setSeed(42);
+        other.setSeed(42);
+        set.initializeRandomCentroids();
+        other.initializeRandomCentroids();
+        assertArrayEquals(set.centroids, other.centroids);
+        // copies get independent streams, the same for the same seed
+        Dataset copy = set.copy();
+        Dataset otherCopy = other.copy();
+        copy.initializeRandomCentroids();
+        otherCopy.initializeRandomCentroids();
+        assertArrayEquals(copy.centroids, otherCopy.centroids);
+        assertFalse(Arrays.deepEquals(set.centroids, copy.centroids));
+        assertArrayEquals(set.sample(100).getData(), other.sample(100).getData());
+
+        // sampled loading
+        assertArrayEquals(new Dataset("src/test/testdata/s2.txt", 15, 100, 7).getData(),
+                new Dataset("src/test/testdata/s2.txt", 15, 100, 7).getData());
+    }
+
+    @Test
+    void pickRandom() {
+        for (int n : new int[]{0, 1, 10, 1000}) {
+            int[] picked = Dataset.pickRandom(1000, n, new SplittableRandom());
+            assertEquals(n, picked.length);
+            for (int i = 0; i < n; i++) {
+                assertTrue(picked[i] >= 0 && picked[i] < 1000);
+                if (i > 0)
+                    assertTrue(picked[i - 1] < picked[i]); // ascending and distinct
+            }
+        }
+        // every integer is picked about equally often
+        SplittableRandom random = new SplittableRandom();
+        int[] counts = new int[10];
+        for (int round = 0; round < 10000; round++) {
+            for (int i : Dataset.pickRandom(10, 3, random))
+                counts[i]++;
+        }
+        for (int count : counts)
+            assertEquals(3000, count, 300);
+        assertThrows(IllegalArgumentException.class, () -> Dataset.pickRandom(10, 11, random));
+    }
+
+    @Test
+    void groupByCluster() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        new KMeans().cluster(set, 3);
+        double[][] data = set.getData();
+        int[] partitions = set.getPartitions();
+        double TSE = set.TSE();
+        ClusteringState state = set.saveState();
+        Dataset copy = set.copy();
+
+        set.groupByCluster();
+        // vectors of each cluster are contiguous and in cluster order
+        for(int i = 1; i < set.partitions.length; i++){
+            assertTrue(set.partitions[i - 1] <= set.partitions[i]);
+        }
+        // original order is kept for output
+        assertTrue(Arrays.deepEquals(data, set.getData()));
+        assertArrayEquals(partitions, set.getPartitions());
+        assertEquals(TSE, set.TSE());
+        // copies keep the old matrix
+        assertTrue(Arrays.deepEquals(data, copy.data));
+        // old state refers to the old order
+        assertThrows(IllegalArgumentException.class, () -> set.restoreState(state));
+
+        // repeated grouping after further iterations
+        new KMeans().cluster(set, 3);
+        partitions = set.getPartitions();
+        set.groupByCluster();
+        assertTrue(Arrays.deepEquals(data, set.getData()));
+        assertArrayEquals(partitions, set.getPartitions());
+
+        // periodic grouping while clustering gives the same result as without
+        copy.setRegroupInterval(1);
+        Dataset copy2 = copy.copy();
+        copy2.setRegroupInterval(0);
+        new FastKMeans().cluster(copy);
+        new FastKMeans().cluster(copy2);
+        assertEquals(copy2.TSE(), copy.TSE(), copy2.TSE() * 1E-9);
+        for(int c = 0; c < copy.centroids.length; c++){
+            assertEquals(0, Dataset.distSq(copy.centroids[c], copy2.centroids[c]), 1E-6);
+        }
+        assertThrows(IllegalArgumentException.class, () -> set.setRegroupInterval(-1));
+    }
+
+    @Test
+    void sortBySpaceFillingCurve() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        double[][] data = set.getData();
+        int[] partitions = set.getPartitions();
+        double TSE = set.TSE();
+
+        set.sortBySpaceFillingCurve(SpaceFillingCurve.HILBERT);
+        // rows follow the curve
+        long[] keys = SpaceFillingCurve.HILBERT.keys(set.data);
+        for(int i = 1; i < keys.length; i++){
+            assertTrue(keys[i - 1] <= keys[i]);
+        }
+        // original order is kept for output
+        assertTrue(Arrays.deepEquals(data, set.getData()));
+        assertArrayEquals(partitions, set.getPartitions());
+        assertEquals(TSE, set.TSE());
+        checkPartitioning(set);
+
+        // the order is independent of the initial order
+        set.sortBySpaceFillingCurve(SpaceFillingCurve.MORTON);
+        set.sortBySpaceFillingCurve(SpaceFillingCurve.HILBERT);
+        assertTrue(Arrays.deepEquals(data, set.getData()));
+        assertArrayEquals(keys, SpaceFillingCurve.HILBERT.keys(set.data));
+    }
+
+    @Test
+    void convertStorage() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.centroids = S2_REAL_CENTROIDS;
+        set.partition();
+        double[][] data = set.getData();
+        int[] partitions = set.getPartitions();
+        double TSE = set.TSE();
+        assertEquals(StoragePrecision.DOUBLE, set.getStoragePrecision());
+
+        // s2 has integer values larger than 16 bits
+        assertThrows(IllegalArgumentException.class, () -> set.convertStorage(StoragePrecision.INT16));
+        assertEquals(StoragePrecision.DOUBLE, set.getStoragePrecision());
+        set.convertStorage(StoragePrecision.AUTO);
+        assertEquals(StoragePrecision.INT32, set.getStoragePrecision());
+        assertNull(set.data);
+
+        assertTrue(Arrays.deepEquals(data, set.getData()));
+        assertArrayEquals(partitions, set.getPartitions());
+        assertEquals(TSE, set.TSE(), TSE * EPSILON);
+        set.partition();
+        assertArrayEquals(partitions, set.getPartitions());
+        assertEquals(TSE, set.TSE(), TSE * EPSILON);
+        assertEquals(5000, set.getNumberOfVectors());
+        assertEquals(2, set.getDimensions());
+
+        // same clustering in every format
+        set.convertStorage(StoragePrecision.FLOAT);
+        set.sortBySpaceFillingCurve(SpaceFillingCurve.HILBERT);
+        set.partition();
+        assertArrayEquals(partitions, set.getPartitions());
+        set.convertStorage(StoragePrecision.DOUBLE);
+        assertNotNull(set.data);
+        set.partition();
+        assertArrayEquals(partitions, set.getPartitions());
+    }
+
+    @Test
+    void offHeap() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.centroids = S2_REAL_CENTROIDS;
+        set.partition();
+        double[][] data = set.getData();
+        int[] partitions = set.getPartitions();
+        double TSE = set.TSE();
+
+        set.sortBySpaceFillingCurve(SpaceFillingCurve.MORTON);
+        set.moveOffHeap();
+        assertTrue(set.isOffHeap());
+        assertNull(set.data);
+        assertTrue(Arrays.deepEquals(data, set.getData()));
+        assertEquals(TSE, set.TSE());
+        set.partition();
+        assertArrayEquals(partitions, set.getPartitions());
+        assertEquals(TSE, set.TSE());
+
+        // binary files keep the original order and are mapped to memory
+        File file = File.createTempFile("dataset", ".bin");
+        try {
+            set.writeBinary(file.getPath());
+            Dataset mapped = new Dataset(file.getPath(), 15);
+            assertTrue(mapped.isOffHeap());
+            assertTrue(Arrays.deepEquals(data, mapped.getData()));
+            mapped.centroids = S2_REAL_CENTROIDS;
+            mapped.partition();
+            assertArrayEquals(partitions, mapped.getPartitions());
+            assertEquals(TSE, mapped.TSE());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void offHeapRegroup() throws IOException {
+        // regrouping an off-heap matrix repeatedly reuses the replaced buffers, without changing
+        // the result or the data seen by copies and views
+        Dataset heap = new Dataset("src/test/testdata/s2.txt", 15);
+        heap.setSeed(3);
+        heap.initializeRandomCentroids();
+        double[][] data = heap.getData();
+        Dataset direct = heap.copy();
+        direct.moveOffHeap();
+        heap.setRegroupInterval(1);
+        direct.setRegroupInterval(1);
+        new KMeans().cluster(heap, 3);
+        Dataset copy = direct.copy();
+        DataStorage view = direct.getDataView();
+        new KMeans().cluster(direct, 3);
+        assertArrayEquals(heap.centroids, direct.centroids);
+        new KMeans().cluster(heap);
+        new KMeans().cluster(direct);
+        assertArrayEquals(heap.centroids, direct.centroids);
+        assertArrayEquals(heap.getPartitions(), direct.getPartitions());
+        assertTrue(Arrays.deepEquals(data, direct.getData()));
+        assertTrue(Arrays.deepEquals(data, copy.getData()));
+        for (int i = 0; i < data.length; i++)
+            assertArrayEquals(data[i], view.getRow(i));
+    }
+
+    @Test
+    void deduplicate() throws IOException {
+        // s2 twice, and the first 100 vectors three times
+        double[][] s2 = new Dataset("src/test/testdata/s2.txt", 15).getData();
+        double[][] data = new double[s2.length * 2 + 100][];
+        for (int i = 0; i < data.length; i++)
+            data[i] = s2[i % s2.length].clone();
+        Dataset set = new Dataset(data, 15);
+        set.centroids = ClusteringState.copyOf(S2_REAL_CENTROIDS);
+        set.partition();
+        Dataset original = set.copy();
+        int[] partitions = set.getPartitions();
+        double TSE = set.TSE();
+
+        assertEquals(data.length / (double) s2.length, set.deduplicate());
+        assertEquals(s2.length, set.getNumberOfVectors());
+        assertEquals(data.length, set.getTotalWeight());
+        assertEquals(3, set.getWeight(5));
+        assertEquals(3, set.getWeight(s2.length + 5));
+        assertEquals(2, set.getWeight(100));
+        assertEquals(data.length, Arrays.stream(set.clusterWeights()).sum());
+        assertEquals(s2.length, Arrays.stream(set.clusterSizes()).sum());
+        // every input vector is still available in the original order
+        assertTrue(Arrays.deepEquals(data, set.getData()));
+        assertArrayEquals(partitions, set.getPartitions());
+        assertEquals(TSE, set.TSE(), TSE * EPSILON);
+        assertEquals(TSE, set.partition(), TSE * EPSILON);
+        assertEquals(original.MSE(), set.MSE(), TSE * EPSILON);
+        assertArrayEquals(original.mean(), set.mean(), EPSILON);
+        assertArrayEquals(original.variances(), set.variances(), 1e-3);
+
+        // the weighted vectors give the same clustering
+        new KMeans().cluster(original);
+        new KMeans().cluster(set);
+        assertArrayEquals(original.getPartitions(), set.getPartitions());
+        for (int c = 0; c < 15; c++)
+            assertArrayEquals(original.centroids[c], set.centroids[c], 1e-6);
+        set.groupByCluster();
+        assertTrue(Arrays.deepEquals(data, set.getData()));
+        assertEquals(3, set.getWeight(5));
+        assertEquals(1, set.deduplicate());
+
+        // weights must be positive
+        DataStorage storage = new DoubleStorage(S2_TRUNCATED_DATA);
+        assertThrows(IllegalArgumentException.class, () -> new Dataset(storage, new double[]{1, 1, 0, 1, 1}, 2));
+        assertThrows(IllegalArgumentException.class, () -> new Dataset(storage, new double[]{1, 1}, 2));
+        assertThrows(IllegalArgumentException.class, () -> new Dataset(new double[][]{{1}, {1}}, 2).deduplicate());
+
+        // random vectors are picked by weight
+        Dataset weighted = new Dataset(storage, new double[]{1e-9, 1e-9, 1, 1e-9, 1e-9}, 1);
+        int picked = 0;
+        for (int i = 0; i < 100; i++) {
+            if (weighted.randomRow() == 2)
+                picked++;
+        }
+        assertTrue(picked > 95);
+    }
+
+    @Test
+    void deduplicateIntegerVectors() {
+        // integer-valued components differ only in the high bits of their representation
+        SplittableRandom random = new SplittableRandom(1);
+        int distinct = 100000;
+        double[][] data = new double[distinct + 1000][];
+        for (int i = 0; i < distinct; i++) {
+            data[i] = new double[16];
+            for (int d = 0; d < 16; d++)
+                data[i][d] = random.nextInt(256);
+        }
+        for (int i = distinct; i < data.length; i++)
+            data[i] = data[random.nextInt(distinct)].clone();
+        Dataset set = new Dataset(data, 10);
+        long unique = Arrays.stream(data).map(Arrays::toString).distinct().count();
+        assertTimeout(Duration.ofSeconds(5), () -> assertEquals(data.length / (double) unique, set.deduplicate()));
+        assertEquals(unique, set.getNumberOfVectors());
+        assertEquals(data.length, set.getTotalWeight());
+    }
+
+    @Test
+    void compactPartitions() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.centroids = S2_REAL_CENTROIDS;
+        set.partition();
+        int[] partitions = set.getPartitions();
+        double TSE = set.TSE();
+        assertEquals(4, set.labels.bytesPerLabel());
+
+        set.setCompactPartitions(true);
+        assertTrue(set.isCompactPartitions());
+        assertNull(set.partitions);
+        assertEquals(1, set.labels.bytesPerLabel());
+        assertTrue(set.distances.isCompact());
+        assertArrayEquals(partitions, set.getPartitions());
+        set.partition();
+        assertArrayEquals(partitions, set.getPartitions());
+        assertEquals(TSE, set.TSE());
+        // float distances are never rounded up
+        for (int i = 0; i < set.getNumberOfVectors(); i++) {
+            double distance = set.storage.distSq(i, set.centroids[set.labels.get(i)]);
+            assertTrue(set.distances.get(i) <= distance);
+            assertEquals(distance, set.distances.get(i), distance * 1e-6);
+        }
+
+        // the state operations keep the compact form
+        Dataset copy = set.copy();
+        assertTrue(copy.isCompactPartitions());
+        ClusteringState state = set.saveState();
+        assertArrayEquals(partitions, state.getPartitions());
+        set.groupByCluster();
+        assertArrayEquals(partitions, set.getPartitions());
+        new KMeans().cluster(copy);
+        copy.restoreState(state);
+        assertArrayEquals(partitions, copy.getPartitions());
+        assertEquals(TSE, copy.TSE());
+        set.reduceSize(100);
+        assertEquals(100, set.labels.size());
+        assertEquals(1, set.labels.bytesPerLabel());
+
+        // labels grow with the number of clusters
+        LabelArray labels = LabelArray.allocate(3, 300, true);
+        assertEquals(2, labels.bytesPerLabel());
+        labels.set(0, 299);
+        assertEquals(299, labels.get(0));
+        assertEquals(4, LabelArray.allocate(3, 70000, true).bytesPerLabel());
+        labels = LabelArray.allocate(3, 256, true);
+        labels.set(1, 255);
+        assertArrayEquals(new int[]{0, 255, 0}, labels.toArray());
+
+        set.setCompactPartitions(false);
+        assertEquals(4, set.labels.bytesPerLabel());
+        assertNotNull(set.partitions);
+    }
+
     @Test
     void initializeRandomCentroids() throws IOException {
         Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
@@ -267,6 +824,12 @@ class DatasetTest {
             assertTrue(matches);
         }
 
+        // centroids are copies, modifying them does not modify the data
+        double[][] data = set.getData();
+        for(double[] c : set.centroids)
+            c[0]++;
+        assertTrue(Arrays.deepEquals(data, set.data));
+
         // partitioning should be done as part of the function
         int[] oldPartitions = Arrays.copyOf(set.partitions, set.partitions.length);
         set.initializeRandomCentroids();
@@ -332,6 +895,34 @@ class DatasetTest {
         assertEquals(4, set.TSE());
     }
 
+    @Test
+    void clusterSSE() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        new KMeans().cluster(set, 3);
+
+        // compare the per-cluster values to a full scan of the data
+        double[] SSEs = new double[set.centroids.length];
+        int[] sizes = new int[set.centroids.length];
+        for(int i = 0; i < set.data.length; i++){
+            SSEs[set.partitions[i]] += Dataset.distSq(set.data[i], set.centroids[set.partitions[i]]);
+            sizes[set.partitions[i]]++;
+        }
+        double TSE = 0;
+        for(int c = 0; c < set.centroids.length; c++){
+            assertEquals(SSEs[c], set.clusterSSE(c), SSEs[c] * 1E-9);
+            TSE += set.clusterSSE(c);
+        }
+        assertArrayEquals(sizes, set.clusterSizes());
+        assertEquals(TSE, set.TSE());
+        assertEquals(set.clusterSSE(3), set.clusterSSEs()[3]);
+
+        // statistics follow direct changes to the partitions after recalculation
+        int label = set.partitions[0];
+        set.partitions[0] = (label + 1) % set.centroids.length;
+        set.updateClusterStatistics();
+        assertEquals(sizes[label] - 1, set.clusterSizes()[label]);
+    }
+
     @Test
     void MSE() throws IOException {
         Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
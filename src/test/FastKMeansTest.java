@@ -65,6 +65,22 @@ class FastKMeansTest {
         }
     }
 
+    @Test
+    void compactPartitions() throws IOException {
+        // the rounded distances must not change the result of the partial search
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.setSeed(4);
+        for(int i = 0; i < 10; i++){
+            set.initializeRandomCentroids();
+            Dataset compact = set.copy();
+            compact.setCompactPartitions(true);
+            new FastKMeans().cluster(compact);
+            new KMeans().cluster(set);
+            assertTrue(Arrays.deepEquals(set.getCentroids(), compact.getCentroids()));
+            assertArrayEquals(set.getPartitions(), compact.getPartitions());
+        }
+    }
+
     @Test
     void benchmarkVsKMeans() throws IOException {
         // This test is not particularly exact, as it depends on processing time.
@@ -98,4 +114,38 @@ class FastKMeansTest {
         System.out.println("\t\t\tk-means " + (kmTimes.get(fkmTimes.size()/2)/1000000) + " ms median" );
         assertTrue(fkmTimes.get(fkmTimes.size()/2) < kmTimes.get(kmTimes.size()/2));
     }
+
+    @Test
+    void benchmarkSpaceFillingCurveOrder() throws IOException {
+        // Compares the iteration time on birch2 in file order and in Hilbert curve order.
+        // The timings are only reported, the gain depends on the hardware. The result must not change.
+        LinkedList<Long> fileOrderTimes = new LinkedList<>();
+        LinkedList<Long> curveOrderTimes = new LinkedList<>();
+        final int iterations = 10;
+
+        Dataset set = new Dataset("src/test/testdata/birch2.txt", 100);
+        Dataset sorted = set.copy();
+        sorted.sortBySpaceFillingCurve(SpaceFillingCurve.HILBERT);
+        for(int i = 0; i < 10; i++){
+            set.initializeRandomCentroids();
+            double[][] initialCentroids = set.getCentroids(); // copy
+            long start = System.nanoTime();
+            assertTimeoutPreemptively(Duration.ofMillis(10000), () -> new FastKMeans().cluster(set, iterations));
+            fileOrderTimes.add(System.nanoTime() - start);
+
+            sorted.centroids = initialCentroids;
+            sorted.partition();
+            start = System.nanoTime();
+            assertTimeoutPreemptively(Duration.ofMillis(10000), () -> new FastKMeans().cluster(sorted, iterations));
+            curveOrderTimes.add(System.nanoTime() - start);
+            assertEquals(set.TSE(), sorted.TSE(), set.TSE() * 1E-6);
+            assertArrayEquals(set.getPartitions(), sorted.getPartitions());
+        }
+        fileOrderTimes.sort(Comparator.naturalOrder());
+        curveOrderTimes.sort(Comparator.naturalOrder());
+        System.out.println("Benchmark:\tFast k-means, file order " +
+                (fileOrderTimes.get(fileOrderTimes.size()/2)/iterations/1000) + " us/iteration median");
+        System.out.println("\t\t\tFast k-means, Hilbert order " +
+                (curveOrderTimes.get(curveOrderTimes.size()/2)/iterations/1000) + " us/iteration median");
+    }
 }
\ No newline at end of file
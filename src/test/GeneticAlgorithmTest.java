@@ -0,0 +1,69 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the genetic algorithm
+ */
+class GeneticAlgorithmTest {
+
+    @Test
+    void cluster() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.loadRealCentroids("src/test/testdata/s2-centroids.txt");
+        GeneticAlgorithm algorithm = new GeneticAlgorithm();
+        algorithm.cluster(set);
+        assertEquals(0, set.centroidIndex());
+        assertTrue(algorithm.getIterations() >= 1);
+        // the partitions match the centroids
+        int[] partitions = set.getPartitions();
+        set.partition();
+        assertArrayEquals(partitions, set.getPartitions());
+    }
+
+    @Test
+    void keepsBestMember() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/birch2.txt", 100);
+        // the first member starts from the current centroids and the best member is never lost
+        Dataset fineTuned = set.copy();
+        new FastKMeans().cluster(fineTuned, GeneticAlgorithm.DEFAULT_FINE_TUNE_ITERATIONS);
+        double[] errors = new double[2];
+        int[] threads = {1, 4};
+        for (int i = 0; i < threads.length; i++) {
+            Dataset copy = set.copy();
+            GeneticAlgorithm algorithm = new GeneticAlgorithm(6, 2, threads[i]);
+            algorithm.cluster(copy, 5);
+            assertEquals(5, algorithm.getIterations());
+            assertTrue(copy.TSE() <= fineTuned.TSE());
+            errors[i] = copy.MSE();
+        }
+        Dataset fastKMeans = set.copy();
+        new FastKMeans().cluster(fastKMeans);
+        for (double error : errors)
+            assertTrue(error < fastKMeans.MSE());
+    }
+
+    @Test
+    void sameResultWithAnyNumberOfThreads() throws IOException {
+        // the result depends on the seed only, not on the number of threads
+        int[] threads = {1, 4};
+        double[][][] centroids = new double[threads.length][][];
+        for (int i = 0; i < threads.length; i++) {
+            Dataset copy = new Dataset("src/test/testdata/s2.txt", 15);
+            copy.setSeed(99);
+            copy.initializeRandomCentroids();
+            new GeneticAlgorithm(8, 2, threads[i]).cluster(copy, 4);
+            centroids[i] = copy.centroids;
+        }
+        assertArrayEquals(centroids[0], centroids[1]);
+    }
+
+    @Test
+    void invalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> new GeneticAlgorithm(1, 2, 1));
+        assertThrows(IllegalArgumentException.class, () -> new GeneticAlgorithm(10, -1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new GeneticAlgorithm(10, 2, 0));
+    }
+}
@@ -0,0 +1,156 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the per-iteration events of the algorithms
+ */
+class IterationListenerTest {
+
+    @Test
+    void kMeans() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.initializeRandomCentroids();
+        int n = set.getNumberOfVectors();
+        List<IterationEvent> events = new ArrayList<>();
+        KMeans kMeans = new KMeans();
+        kMeans.setListener(events::add);
+        kMeans.cluster(set);
+        assertEquals(kMeans.getIterations(), events.size());
+        double previousTSE = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < events.size(); i++) {
+            IterationEvent event = events.get(i);
+            assertSame(kMeans, event.algorithm);
+            assertEquals(i + 1, event.iteration);
+            assertEquals((long) n * 15, event.distanceComputations);
+            assertTrue(event.changedLabels >= 0 && event.changedLabels <= n);
+            assertTrue(event.TSE <= previousTSE * (1 + 1e-9));
+            previousTSE = event.TSE;
+        }
+        // the last iteration detected convergence
+        assertEquals(0, events.get(events.size() - 1).changedLabels);
+        assertEquals(set.TSE(), previousTSE, set.TSE() * 1e-9);
+        assertNull(set.counters);
+    }
+
+    @Test
+    void fastKMeans() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.initializeRandomCentroids();
+        Dataset same = set.copy();
+        int n = set.getNumberOfVectors();
+        List<IterationEvent> events = new ArrayList<>();
+        FastKMeans fastKMeans = new FastKMeans();
+        fastKMeans.setListener(events::add);
+        fastKMeans.cluster(set);
+        assertEquals(fastKMeans.getIterations(), events.size());
+        long distances = 0;
+        for (IterationEvent event : events) {
+            assertTrue(event.activeCentroids >= 0 && event.activeCentroids <= 15);
+            assertTrue(event.distanceComputations <= (long) n * 16 + n);
+            distances += event.distanceComputations;
+        }
+        assertEquals(0, events.get(events.size() - 1).activeCentroids);
+        // fewer distances than k-means
+        assertTrue(distances < (long) n * 15 * events.size());
+    }
+
+    @Test
+    void fastKMeansResultUnchanged() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.initializeRandomCentroids();
+        Dataset same = set.copy();
+        FastKMeans fastKMeans = new FastKMeans();
+        fastKMeans.setListener(event -> {});
+        fastKMeans.cluster(set);
+        new FastKMeans().cluster(same);
+        assertArrayEquals(same.centroids, set.centroids);
+    }
+
+    @Test
+    void randomSwap() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        Dataset same = set.copy();
+        set.setSeed(2);
+        set.initializeRandomCentroids();
+        List<IterationEvent> events = new ArrayList<>();
+        RandomSwap rs = new RandomSwap();
+        rs.setListener(events::add);
+        rs.cluster(set, 50);
+        assertEquals(50, events.size());
+        int accepted = 0;
+        long distances = 0;
+        for (IterationEvent event : events) {
+            assertTrue(event.acceptedSwaps >= accepted);
+            accepted = event.acceptedSwaps;
+            distances += event.distanceComputations;
+        }
+        // three partitionings per trial, and the initial one
+        assertEquals((3 * 50 + 1L) * set.getNumberOfVectors() * 15, distances);
+        assertEquals(rs.getAcceptedSwaps(), accepted);
+        assertEquals(set.TSE(), events.get(49).TSE, set.TSE() * 1e-9);
+        same.setSeed(2);
+        same.initializeRandomCentroids();
+        new RandomSwap().cluster(same, 50);
+        assertArrayEquals(same.centroids, set.centroids);
+        assertNull(set.counters);
+    }
+
+    @Test
+    void stochasticRelaxation() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.initializeRandomCentroids();
+        List<IterationEvent> events = new ArrayList<>();
+        StochasticRelaxation sr = new StochasticRelaxation(0.9, 2);
+        sr.setListener(events::add);
+        sr.cluster(set, 20);
+        // followed by the iterations of the final fast k-means
+        int srEvents = 0;
+        for (IterationEvent event : events) {
+            if (event.algorithm == sr) {
+                assertEquals(++srEvents, event.iteration);
+                assertEquals(Math.pow(0.9, event.iteration), event.temperature, 1e-12);
+            } else {
+                assertTrue(event.algorithm instanceof FastKMeans);
+            }
+        }
+        assertEquals(sr.getIterations(), srEvents);
+        assertTrue(events.size() > srEvents);
+        assertNull(set.counters);
+    }
+
+    @Test
+    void multiResolution() throws IOException {
+        // the wrapper passes the listener on
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.initializeRandomCentroids();
+        List<IterationEvent> events = new ArrayList<>();
+        MultiResolutionClustering multiResolution = new MultiResolutionClustering(new KMeans(), 500);
+        multiResolution.setListener(events::add);
+        multiResolution.cluster(set);
+        assertEquals(multiResolution.getIterations(), events.size());
+    }
+
+    @Test
+    void geneticAlgorithm() throws IOException {
+        // reports each generation
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.initializeRandomCentroids();
+        List<IterationEvent> events = new ArrayList<>();
+        GeneticAlgorithm ga = new GeneticAlgorithm(4, 1, 2);
+        ga.setListener(events::add);
+        ga.cluster(set, 3);
+        assertEquals(3, events.size());
+        // the best solution is partitioned once more at the end, which can only lower the error
+        assertTrue(set.TSE() <= events.get(2).TSE * (1 + 1e-9));
+
+        events.clear();
+        ga.setListener(null);
+        ga.cluster(set, 3);
+        assertTrue(events.isEmpty());
+    }
+}
@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the multi-resolution clustering driver
+ */
+class MultiResolutionClusteringTest {
+
+    @Test
+    void levelSizes() {
+        MultiResolutionClustering algorithm = new MultiResolutionClustering(new FastKMeans(), 1000);
+        assertArrayEquals(new int[]{1000, 4000, 16000, 64000, 100000}, algorithm.levelSizes(100000, 15));
+        assertArrayEquals(new int[]{1000, 4000}, algorithm.levelSizes(4000, 15));
+        assertArrayEquals(new int[]{500}, algorithm.levelSizes(500, 15));
+        // the smallest sample must contain at least one vector for each cluster
+        assertArrayEquals(new int[]{2000, 4000, 5000}, new MultiResolutionClustering(new FastKMeans(), 10, 2)
+                .levelSizes(5000, 2000));
+
+        assertThrows(IllegalArgumentException.class, () -> new MultiResolutionClustering(new FastKMeans(), 0));
+        assertThrows(IllegalArgumentException.class, () -> new MultiResolutionClustering(new FastKMeans(), 10, 1));
+    }
+
+    @Test
+    void cluster() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/birch2.txt", 100);
+        Dataset copy = set.copy();
+        MultiResolutionClustering algorithm = new MultiResolutionClustering(new RandomSwap(), 1000);
+        algorithm.cluster(set, 100);
+
+        assertArrayEquals(new int[]{1000, 4000, 16000, 64000, 100000}, algorithm.getLevelSizes());
+        int[] iterations = algorithm.getLevelIterations();
+        assertEquals(100, iterations[0]);
+        int total = 0;
+        for (int i : iterations) {
+            assertTrue(i >= 1 && i <= 100);
+            total += i;
+        }
+        assertEquals(total, algorithm.getIterations());
+
+        // the result is a converged fast k-means solution on the full data
+        assertEquals(100, set.centroids.length);
+        double TSE = set.TSE();
+        assertEquals(TSE, set.partition(), TSE * 1e-9);
+        new FastKMeans().cluster(copy);
+        assertTrue(set.MSE() < copy.MSE() * 1.2);
+    }
+
+    @Test
+    void fullDataOnly() throws IOException {
+        // no sample is smaller than the data: fast k-means on the full data
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        Dataset copy = set.copy();
+        MultiResolutionClustering algorithm = new MultiResolutionClustering(new RandomSwap(), 5000);
+        algorithm.cluster(set);
+        new FastKMeans().cluster(copy);
+        assertArrayEquals(copy.centroids, set.centroids);
+        assertArrayEquals(new int[]{5000}, algorithm.getLevelSizes());
+    }
+}
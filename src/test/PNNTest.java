@@ -0,0 +1,133 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the pairwise nearest neighbor algorithm
+ */
+class PNNTest {
+
+    @Test
+    void compareToNaivePNN() {
+        double[][] data = new double[200][3];
+        for (double[] v : data) {
+            for (int d = 0; d < v.length; d++)
+                v[d] = Math.random() * 100;
+        }
+        Dataset set = new Dataset(data, 5);
+        PNN pnn = new PNN();
+        pnn.cluster(set);
+        assertEquals(195, pnn.getIterations());
+        assertCentroidsEqual(naivePNN(data, 5), set.centroids);
+    }
+
+    @Test
+    void weightedVectors() {
+        // duplicates are merged first at no cost, so weights act like duplicates
+        double[][] data = new double[100][2];
+        for (double[] v : data) {
+            v[0] = Math.random();
+            v[1] = Math.random();
+        }
+        double[][] duplicated = new double[300][];
+        double[] weights = new double[100];
+        for (int i = 0; i < 100; i++) {
+            weights[i] = 1 + i % 3;
+            for (int j = 0; j < weights[i]; j++)
+                duplicated[i + j * 100] = data[i].clone();
+        }
+        duplicated = Arrays.stream(duplicated).filter(v -> v != null).toArray(double[][]::new);
+        Dataset set = new Dataset(new DoubleStorage(data), weights, 4);
+        new PNN().cluster(set);
+        Dataset copy = new Dataset(duplicated, 4);
+        new PNN().cluster(copy);
+        assertCentroidsEqual(copy.centroids, set.centroids);
+        assertEquals(copy.TSE(), set.TSE(), 1e-9);
+    }
+
+    @Test
+    void seedKMeans() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.loadRealCentroids("src/test/testdata/s2-centroids.txt");
+        new PNN().cluster(set);
+        checkPartitioning(set);
+        new KMeans().cluster(set);
+        assertEquals(0, set.centroidIndex());
+    }
+
+    @Test
+    void reducedInitialClusters() throws IOException {
+        Dataset birch = new Dataset("src/test/testdata/birch2.txt", 100);
+        Dataset random = birch.copy();
+        PNN pnn = new PNN(2000);
+        pnn.cluster(birch);
+        assertEquals(1900, pnn.getIterations());
+        new FastKMeans().cluster(birch);
+        new FastKMeans().cluster(random);
+        assertTrue(birch.MSE() < random.MSE());
+    }
+
+    @Test
+    void invalidInitialClusters() {
+        assertThrows(IllegalArgumentException.class, () -> new PNN(0));
+    }
+
+    /**
+     * every vector must be in the partition of its nearest centroid
+     */
+    private static void checkPartitioning(Dataset set) {
+        for (int i = 0; i < set.getNumberOfVectors(); i++)
+            assertEquals(Dataset.nearestIndex(set.data[i], set.centroids), set.partitions[i]);
+    }
+
+    /**
+     * Merges the cheapest pair by comparing all pairs on every step
+     */
+    private static double[][] naivePNN(double[][] data, int k) {
+        int n = data.length;
+        double[][] centroids = new double[n][];
+        double[] sizes = new double[n];
+        for (int i = 0; i < n; i++) {
+            centroids[i] = data[i].clone();
+            sizes[i] = 1;
+        }
+        for (int clusters = n; clusters > k; clusters--) {
+            int bestA = -1, bestB = -1;
+            double best = Double.POSITIVE_INFINITY;
+            for (int a = 0; a < n; a++) {
+                for (int b = a + 1; b < n; b++) {
+                    if (centroids[a] == null || centroids[b] == null)
+                        continue;
+                    double cost = sizes[a] * sizes[b] / (sizes[a] + sizes[b]) * Dataset.distSq(centroids[a], centroids[b]);
+                    if (cost < best) {
+                        best = cost;
+                        bestA = a;
+                        bestB = b;
+                    }
+                }
+            }
+            for (int d = 0; d < centroids[bestA].length; d++) {
+                centroids[bestA][d] = (sizes[bestA] * centroids[bestA][d] + sizes[bestB] * centroids[bestB][d])
+                        / (sizes[bestA] + sizes[bestB]);
+            }
+            sizes[bestA] += sizes[bestB];
+            centroids[bestB] = null;
+        }
+        return Arrays.stream(centroids).filter(c -> c != null).toArray(double[][]::new);
+    }
+
+    private static void assertCentroidsEqual(double[][] expected, double[][] actual) {
+        Comparator<double[]> order = Comparator.comparingDouble(c -> c[0]);
+        double[][] a = expected.clone();
+        double[][] b = actual.clone();
+        Arrays.sort(a, order);
+        Arrays.sort(b, order);
+        assertEquals(a.length, b.length);
+        for (int c = 0; c < a.length; c++)
+            assertArrayEquals(a[c], b[c], 1e-9);
+    }
+}
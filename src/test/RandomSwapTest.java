@@ -47,6 +47,97 @@ class RandomSwapTest {
         assertEquals(0, set.centroidIndex());
     }
 
+    @Test
+    void costGuidedSwaps() throws IOException {
+        // cost-guided selection needs far fewer trials than random selection to find the
+        // clusters, from the same initial centroids
+        int randomTrials = 0;
+        int costGuidedTrials = 0;
+        for (int seed = 1; seed <= 4; seed++) {
+            randomTrials += trialsToCorrectClustering(new RandomSwap(), seed);
+            costGuidedTrials += trialsToCorrectClustering(
+                    new RandomSwap(RandomSwap.Removal.MIN_COST, RandomSwap.Insertion.ERROR_PROPORTIONAL), seed);
+        }
+        assertTrue(costGuidedTrials * 2 < randomTrials, costGuidedTrials + " vs " + randomTrials + " trials");
+
+        // each strategy alone
+        for (RandomSwap.Removal removal : RandomSwap.Removal.values()) {
+            for (RandomSwap.Insertion insertion : RandomSwap.Insertion.values()) {
+                Dataset copy = new Dataset("src/test/testdata/s2.txt", 15);
+                copy.initializeRandomCentroids();
+                double initialTSE = copy.partition();
+                RandomSwap swap = new RandomSwap(removal, insertion);
+                swap.cluster(copy, 20);
+                assertTrue(copy.TSE() <= initialTSE);
+            }
+        }
+    }
+
+    /**
+     * @return number of trials until the centroid index is 0 for the first time; 1000 if never
+     */
+    private static int trialsToCorrectClustering(RandomSwap rs, long seed) throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.loadRealCentroids("src/test/testdata/s2-centroids.txt");
+        set.setSeed(seed);
+        set.initializeRandomCentroids();
+        if (set.centroidIndex() == 0)
+            return 0;
+        StopCondition stop = new StopCondition();
+        int[] trials = {1000};
+        rs.setListener(event -> {
+            if (set.centroidIndex() == 0) {
+                trials[0] = event.iteration;
+                stop.cancel();
+            }
+        });
+        rs.cluster(set, 1000, stop);
+        return trials[0];
+    }
+
+    @Test
+    void adaptive() throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> RandomSwap.adaptive(RandomSwap.Removal.RANDOM, RandomSwap.Insertion.RANDOM, 0));
+        assertThrows(IllegalArgumentException.class, () -> new RandomSwap(RandomSwap.Removal.RANDOM, RandomSwap.Insertion.RANDOM, -1, 0, 2));
+        assertThrows(IllegalArgumentException.class, () -> new RandomSwap(RandomSwap.Removal.RANDOM, RandomSwap.Insertion.RANDOM, 10, 1, 2));
+        assertThrows(IllegalArgumentException.class, () -> new RandomSwap(RandomSwap.Removal.RANDOM, RandomSwap.Insertion.RANDOM, 10, 0, 1));
+
+        // the fixed mode runs every trial with two k-means iterations
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.loadRealCentroids("src/test/testdata/s2-centroids.txt");
+        set.setSeed(8);
+        set.initializeRandomCentroids();
+        RandomSwap fixed = new RandomSwap();
+        fixed.cluster(set.copy(), 30);
+        assertEquals(30, fixed.getIterations());
+        assertEquals(60, fixed.getLocalIterations());
+        assertEquals(0, fixed.getTrialsSaved());
+
+        // the adaptive mode stops long before the fixed number of trials and still finds the clusters
+        RandomSwap rs = RandomSwap.adaptive(RandomSwap.Removal.RANDOM, RandomSwap.Insertion.RANDOM, 50);
+        rs.cluster(set);
+        assertEquals(0, set.centroidIndex());
+        assertTrue(rs.getIterations() >= 50);
+        assertEquals(RandomSwap.DEFAULT_TRIALS, rs.getIterations() + rs.getTrialsSaved());
+        assertTrue(rs.getTrialsSaved() > 0);
+        assertTrue(rs.getLocalIterations() >= RandomSwap.LOCAL_ITERATIONS * rs.getIterations());
+        assertTrue(rs.getLocalIterations() <= RandomSwap.DEFAULT_MAX_LOCAL_ITERATIONS * rs.getIterations());
+    }
+
+    @Test
+    void seed() throws IOException {
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        Dataset other = set.copy();
+        set.setSeed(5);
+        other.setSeed(5);
+        set.initializeRandomCentroids();
+        other.initializeRandomCentroids();
+        new RandomSwap().cluster(set, 50);
+        new RandomSwap().cluster(other, 50);
+        assertArrayEquals(set.centroids, other.centroids);
+        assertArrayEquals(set.getPartitions(), other.getPartitions());
+    }
+
     @Test
     void benchmarkVsKMeans() throws IOException {
         // Expected outcome here is to have a higher quality result (but taking more time)
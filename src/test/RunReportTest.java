@@ -0,0 +1,137 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the machine-readable report of repeated runs
+ */
+class RunReportTest {
+
+    @Test
+    void repeats() {
+        Clustering clustering = runKMeans();
+        int n = clustering.dataset.getNumberOfVectors();
+        List<RunReport.Repeat> repeats = clustering.report.getRepeats();
+        assertEquals(3, repeats.size());
+        int successes = 0;
+        double cumulativeMSE = 0;
+        for (int r = 0; r < repeats.size(); r++) {
+            RunReport.Repeat repeat = repeats.get(r);
+            assertEquals(r + 1, repeat.repeat);
+            assertTrue(repeat.iterations > 0);
+            assertTrue(repeat.timeMs > 0);
+            assertTrue(repeat.CI >= 0);
+            // k-means calculates every distance on every iteration
+            assertEquals((long) repeat.iterations * n * 15, repeat.distanceComputations);
+            if (repeat.CI == 0)
+                successes++;
+            cumulativeMSE += repeat.MSE;
+        }
+        assertEquals(clustering.cumulativeTSE / clustering.dataset.getTotalWeight(), cumulativeMSE, cumulativeMSE * 1e-9);
+        assertEquals(successes / 3.0, clustering.report.successRate(), 1e-12);
+        assertTrue(clustering.report.throughput() > 0);
+    }
+
+    @Test
+    void json() throws IOException {
+        Clustering clustering = runKMeans();
+        StringWriter json = new StringWriter();
+        clustering.report.writeJson(json);
+        assertTrue(json.toString().startsWith("{"));
+        assertTrue(json.toString().contains("\"algorithm\": \"KMeans\""));
+        assertTrue(json.toString().contains("\"repeat\": 3,"));
+        assertTrue(json.toString().contains("\"mse\": {\"mean\": "));
+        assertFalse(json.toString().contains("NaN"));
+    }
+
+    @Test
+    void csv() throws IOException {
+        Clustering clustering = runKMeans();
+        StringWriter csv = new StringWriter();
+        clustering.report.writeCsv(csv);
+        String[] lines = csv.toString().split("\n");
+        // header, 3 repeats, 5 statistics
+        assertEquals(9, lines.length);
+        assertEquals("repeat,iterations,timeMs,mse,ci,ci0,distanceComputations,throughput", lines[0]);
+        assertTrue(lines[3].startsWith("3," + clustering.report.getRepeats().get(2).iterations + ","));
+        assertTrue(lines[4].startsWith("mean,"));
+        assertTrue(lines[8].startsWith("max,"));
+        for (String line : lines)
+            assertEquals(8, line.split(",", -1).length);
+    }
+
+    @Test
+    void stochasticRelaxation() throws IOException {
+        // the distances of the final fast k-means are counted as well
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.initializeRandomCentroids();
+        int n = set.getNumberOfVectors();
+        StochasticRelaxation sr = new StochasticRelaxation(0.9, 2);
+        RunReport report = new RunReport("StochasticRelaxation", n, 15, 2, 0);
+        sr.setListener(report);
+        sr.cluster(set, 20);
+        report.addRepeat(1, sr.getIterations(), 1, set.MSE(), -1);
+        // each iteration partitions the data once
+        assertTrue(report.getRepeats().get(0).distanceComputations > (long) sr.getIterations() * n * 15);
+    }
+
+    @Test
+    void bisectingKMeans() throws IOException {
+        // the distances of the 2-means splits are counted, also without the polish
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        int n = set.getNumberOfVectors();
+        BisectingKMeans bkm = new BisectingKMeans(false);
+        RunReport report = new RunReport("BisectingKMeans", n, 15, 2, 0);
+        bkm.setListener(report);
+        bkm.cluster(set);
+        report.addRepeat(1, bkm.getIterations(), 1, set.MSE(), -1);
+        long distances = report.getRepeats().get(0).distanceComputations;
+        // the first split alone calculates two distances per vector on every iteration
+        assertTrue(distances >= 2L * n);
+        // each vector takes part in about log2(K) splits instead of being compared to all K centroids
+        assertTrue(distances < (long) bkm.getIterations() * n * 15);
+    }
+
+    @Test
+    void uncounted() {
+        // the genetic algorithm does not count its distances, and without real centroids the CI is unknown
+        RunReport report = new RunReport("GeneticAlgorithm", 100, 2, 2, 0);
+        report.iterationDone(new IterationEvent(new GeneticAlgorithm(), 1, 10, -1, -1, -1, -1, Double.NaN));
+        report.addRepeat(1, 1, 5, 0.1, -1);
+        report.iterationDone(new IterationEvent(new KMeans(), 1, 10, 3, 200, -1, -1, Double.NaN));
+        report.addRepeat(2, 1, 5, 0.1, -1);
+        assertEquals(-1, report.getRepeats().get(0).distanceComputations);
+        assertEquals(200, report.getRepeats().get(1).distanceComputations);
+        assertTrue(Double.isNaN(report.successRate()));
+        assertEquals(100 * 2 / 0.01, report.throughput(), 1e-6);
+    }
+
+    @Test
+    void statistics() {
+        double[] stats = RunReport.statistics(new double[]{5, Double.NaN, 1, 3, 2, 4});
+        assertArrayEquals(new double[]{3, 1, 3, 5, 5}, stats);
+        double[] sorted = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(5, RunReport.percentile(sorted, 50));
+        assertEquals(9, RunReport.percentile(sorted, 90));
+        assertEquals(10, RunReport.percentile(sorted, 100));
+        assertEquals(1, RunReport.percentile(sorted, 1));
+        for (double value : RunReport.statistics(new double[]{Double.NaN}))
+            assertTrue(Double.isNaN(value));
+    }
+
+    /**
+     * Runs k-means 3 times on s2 with a report attached
+     */
+    private static Clustering runKMeans() {
+        Clustering clustering = new Clustering("src/test/testdata/s2.txt", 15, 0, 1,
+                "src/test/testdata/s2-centroids.txt", new KMeans());
+        clustering.report = new RunReport("KMeans", clustering.dataset.getNumberOfVectors(), 15, 2, 1);
+        clustering.algorithm.setListener(clustering.report);
+        clustering.runMultiple(3);
+        return clustering;
+    }
+}
@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the space-filling curve orderings.
+ */
+class SpaceFillingCurveTest {
+
+    /**
+     * @return all points of a grid with given side length
+     */
+    private static double[][] grid(int side, int dimensions) {
+        int n = (int) Math.pow(side, dimensions);
+        double[][] points = new double[n][dimensions];
+        for (int i = 0; i < n; i++) {
+            int rest = i;
+            for (int d = 0; d < dimensions; d++) {
+                points[i][d] = rest % side;
+                rest /= side;
+            }
+        }
+        return points;
+    }
+
+    /**
+     * @return points sorted by the curve
+     */
+    private static double[][] sort(double[][] points, SpaceFillingCurve curve) {
+        long[] keys = curve.keys(points);
+        Integer[] order = new Integer[points.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        double[][] result = new double[points.length][];
+        for (int i = 0; i < order.length; i++)
+            result[i] = points[order[i]];
+        return result;
+    }
+
+    @Test
+    void hilbert() {
+        // consecutive points along the Hilbert curve are always neighbors on the grid
+        for (int dimensions = 2; dimensions <= 4; dimensions++) {
+            double[][] sorted = sort(grid(8, dimensions), SpaceFillingCurve.HILBERT);
+            for (int i = 1; i < sorted.length; i++) {
+                assertEquals(1, Dataset.distSq(sorted[i - 1], sorted[i]));
+            }
+        }
+    }
+
+    @Test
+    void morton() {
+        // Z-order: the quadrants of a 2x2 grid are visited in order (0,0), (0,1), (1,0), (1,1)
+        double[][] points = new double[][]{{1, 1}, {0, 1}, {1, 0}, {0, 0}};
+        double[][] sorted = sort(points, SpaceFillingCurve.MORTON);
+        assertTrue(Arrays.deepEquals(new double[][]{{0, 0}, {0, 1}, {1, 0}, {1, 1}}, sorted));
+
+        // each quadrant of a larger grid is completed before moving to the next one
+        sorted = sort(grid(8, 2), SpaceFillingCurve.MORTON);
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            for (int i = quadrant * 16; i < (quadrant + 1) * 16; i++) {
+                assertEquals(quadrant / 2, (int) sorted[i][0] / 4);
+                assertEquals(quadrant % 2, (int) sorted[i][1] / 4);
+            }
+        }
+    }
+
+    @Test
+    void keys() {
+        // constant components and high dimensional data must not break the quantization
+        double[][] points = new double[][]{{5, 1}, {5, 2}, {5, 3}};
+        for (SpaceFillingCurve curve : SpaceFillingCurve.values()) {
+            long[] keys = curve.keys(points);
+            assertTrue(keys[0] < keys[1] && keys[1] < keys[2]);
+            assertEquals(0, curve.keys(new double[0][]).length);
+            assertEquals(2, curve.keys(new double[2][100]).length);
+        }
+    }
+}
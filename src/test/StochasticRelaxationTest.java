@@ -28,6 +28,30 @@ class StochasticRelaxationTest {
         assertThrows(IllegalArgumentException.class, () -> new StochasticRelaxation(1));
         assertThrows(IllegalArgumentException.class, () -> new StochasticRelaxation(0));
         assertThrows(IllegalArgumentException.class, () -> new StochasticRelaxation(-0.5));
+        assertThrows(IllegalArgumentException.class, () -> new StochasticRelaxation(0.95, 0));
+    }
+
+    @Test
+    void threads() throws IOException {
+        // the result depends on the seed only, not on the number of threads
+        int[] threads = {1, 4};
+        double[][][] centroids = new double[threads.length][][];
+        for (int i = 0; i < threads.length; i++) {
+            Dataset set = new Dataset("src/test/testdata/birch2.txt", 100);
+            set.setSeed(5);
+            set.initializeRandomCentroids();
+            new StochasticRelaxation(0.9, threads[i]).cluster(set, 50);
+            centroids[i] = set.centroids;
+        }
+        assertArrayEquals(centroids[0], centroids[1]);
+
+        // the final fast k-means leaves a stable partitioning
+        Dataset set = new Dataset("src/test/testdata/s2.txt", 15);
+        set.initializeRandomCentroids();
+        new StochasticRelaxation(0.9, 4).cluster(set);
+        double TSE = set.TSE();
+        set.updateCentroids();
+        assertEquals(TSE, set.partition(), TSE * 1e-9);
     }
 
     @Test
@@ -0,0 +1,121 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for stopping the algorithms at a deadline or by cancellation
+ */
+class StopConditionTest {
+
+    @Test
+    void never() {
+        assertFalse(StopCondition.NEVER.isMet());
+        assertThrows(IllegalStateException.class, StopCondition.NEVER::cancel);
+    }
+
+    @Test
+    void cancel() {
+        StopCondition cancellable = new StopCondition();
+        assertFalse(cancellable.isMet());
+        cancellable.cancel();
+        assertTrue(cancellable.isMet());
+    }
+
+    @Test
+    void negativeDeadline() {
+        assertThrows(IllegalArgumentException.class, () -> StopCondition.within(-1));
+    }
+
+    @Test
+    void deadlineNotYetMet() {
+        assertTrue(StopCondition.within(0).isMet());
+        assertFalse(StopCondition.within(5000).isMet());
+    }
+
+    @Test
+    void deadlineMetAfterSleeping() throws InterruptedException {
+        StopCondition deadline = StopCondition.within(50);
+        Thread.sleep(60);
+        assertTrue(deadline.isMet());
+    }
+
+    @Test
+    void cancelFromAnotherThread() throws IOException, InterruptedException {
+        Dataset set = new Dataset("src/test/testdata/birch2.txt", 100);
+        set.initializeRandomCentroids();
+        double initialTSE = set.TSE();
+        StopCondition stop = new StopCondition();
+        RandomSwap rs = new RandomSwap();
+        Thread thread = new Thread(() -> rs.cluster(set, 1000000, stop));
+        thread.start();
+        Thread.sleep(200);
+        stop.cancel();
+        thread.join(10000);
+        assertFalse(thread.isAlive());
+        assertTrue(rs.getIterations() > 0 && rs.getIterations() < 1000000);
+        checkSolution(set, initialTSE);
+    }
+
+    @Test
+    void deadline() throws IOException {
+        // each algorithm stops within a reasonable time of the deadline with a valid solution;
+        // the first ones improve the given solution, the rest build their own
+        ClusteringAlgorithm[] algorithms = {new KMeans(), new FastKMeans(), new RandomSwap(),
+                new StochasticRelaxation(0.999), new GeneticAlgorithm(), new BisectingKMeans(),
+                new MultiResolutionClustering(new RandomSwap(), 1000), new CoresetClustering(new RandomSwap(), 2000)};
+        int improving = 5;
+        Dataset set = new Dataset("src/test/testdata/birch2.txt", 100);
+        for (int a = 0; a < algorithms.length; a++) {
+            ClusteringAlgorithm algorithm = algorithms[a];
+            Dataset copy = set.copy();
+            copy.initializeRandomCentroids();
+            double initialTSE = a < improving ? copy.TSE() : Double.POSITIVE_INFINITY;
+            long start = System.nanoTime();
+            algorithm.cluster(copy, Integer.MAX_VALUE, StopCondition.within(100));
+            long elapsedMs = (System.nanoTime() - start) / 1000000;
+            assertTrue(elapsedMs < 3000, algorithm.getClass().getName() + " took " + elapsedMs + " ms");
+            checkSolution(copy, initialTSE);
+        }
+    }
+
+    @Test
+    void alreadyMet() throws IOException {
+        // a condition that is already met leaves the solution as it is
+        Dataset copy = new Dataset("src/test/testdata/birch2.txt", 100);
+        copy.initializeRandomCentroids();
+        double[][] centroids = copy.getCentroids();
+        for (ClusteringAlgorithm algorithm : new ClusteringAlgorithm[]{new KMeans(), new RandomSwap(), new PNN(2000)}) {
+            algorithm.cluster(copy, StopCondition.within(0));
+            assertEquals(0, algorithm.getIterations());
+            assertArrayEquals(centroids, copy.centroids);
+        }
+    }
+
+    @Test
+    void runMultiple() {
+        Clustering clustering = new Clustering("src/test/testdata/s2.txt", 15, 0, 1, null, new RandomSwap());
+        long start = System.nanoTime();
+        clustering.runMultiple(1000, StopCondition.within(300));
+        assertTrue((System.nanoTime() - start) / 1000000 < 3000);
+        assertTrue(clustering.timesRepeated < 1000);
+        assertEquals(clustering.dataset.TSE(), clustering.dataset.partition(), clustering.dataset.TSE() * 1e-9);
+    }
+
+    /**
+     * The solution must have a centroid for every cluster, an error no worse than the given
+     * initial error, and partitions consistent with the statistics
+     */
+    private static void checkSolution(Dataset set, double initialTSE) {
+        assertEquals(set.getNumberOfClusters(), set.centroids.length);
+        double TSE = set.TSE();
+        assertTrue(TSE <= initialTSE * (1 + 1e-9));
+        int total = 0;
+        for (int size : set.clusterSizes())
+            total += size;
+        assertEquals(set.getNumberOfVectors(), total);
+        // partitioning again can only lower the error
+        assertTrue(set.partition() <= TSE * (1 + 1e-9));
+    }
+}